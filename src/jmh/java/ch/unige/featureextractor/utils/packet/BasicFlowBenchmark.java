@@ -0,0 +1,94 @@
+/*
+ * Copyright (c)  Benedetto Marco Serinelli
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ch.unige.featureextractor.utils.packet;
+
+import java.util.ResourceBundle;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * The statistics update of one packet and the serialization of a finished flow, as the string of
+ * dumpFlowBasedFeaturesEx and as the CSV bytes the writers produce.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BasicFlowBenchmark {
+  private static final int PACKETS = 1 << 10;
+  private static final int FINISHED_FLOW_PACKETS = 64;
+
+  private final ResourceBundle rb = ResourceBundle.getBundle("UCI-IDS-2018");
+  private final CsvEncoder encoder = new CsvEncoder();
+  private BasicPacketInfo[] packets;
+  private BasicFlow flow;
+  private BasicFlow finishedFlow;
+  private ColumnPlan plan;
+  private int cursor;
+  private long clock;
+
+  @Setup
+  public void setup() {
+    packets = BenchmarkTraffic.singleFlow(42L).packets(PACKETS);
+    finishedFlow = new BasicFlow(true, packets[0]);
+    for (int i = 1; i < FINISHED_FLOW_PACKETS; i++) {
+      finishedFlow.addPacket(packets[i]);
+    }
+    plan = ColumnPlan.of(rb);
+  }
+
+  // the statistics are online, a flow growing during a whole iteration keeps its size
+  @Setup(Level.Iteration)
+  public void newFlow() {
+    flow = new BasicFlow(true, packets[0]);
+    clock = packets[0].getTimeStamp();
+  }
+
+  @Benchmark
+  public BasicFlow addPacket() {
+    BasicPacketInfo packet = packets[cursor++ & (PACKETS - 1)];
+    clock += 10;
+    packet.setTimeStamp(clock);
+    flow.addPacket(packet);
+    return flow;
+  }
+
+  @Benchmark
+  public String dumpFlowBasedFeaturesEx() {
+    return finishedFlow.dumpFlowBasedFeaturesEx(rb);
+  }
+
+  @Benchmark
+  public int csvEncode() {
+    encoder.encode(finishedFlow, plan);
+    return encoder.length();
+  }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c)  Benedetto Marco Serinelli
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ch.unige.featureextractor.utils.packet;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// The string flow ids next to the allocation-free hash the flow table is keyed on
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BasicPacketInfoBenchmark {
+  private static final int PACKETS = 1 << 12;
+
+  private BasicPacketInfo[] packets;
+  private int cursor;
+
+  @Setup
+  public void setup() {
+    packets = new BenchmarkTraffic(1024, BenchmarkTraffic.MIX_MIXED, 42L).packets(PACKETS);
+  }
+
+  @Benchmark
+  public String fwdFlowId() {
+    return packets[cursor++ & (PACKETS - 1)].fwdFlowId();
+  }
+
+  @Benchmark
+  public String bwdFlowId() {
+    return packets[cursor++ & (PACKETS - 1)].bwdFlowId();
+  }
+
+  @Benchmark
+  public int canonicalFlowHash() {
+    return packets[cursor++ & (PACKETS - 1)].canonicalFlowHash();
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c)  Benedetto Marco Serinelli
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ch.unige.featureextractor.utils.packet;
+
+import java.io.File;
+import java.io.IOException;
+
+/*
+ * Deterministic traffic of the TrafficGenerator for the benchmarks: a fixed number of flows open
+ * at any time, the same seed gives the same packets.
+ */
+final class BenchmarkTraffic {
+  static final String MIX_TCP = "tcp";
+  static final String MIX_UDP = "udp";
+  static final String MIX_MIXED = "mixed";
+
+  private final TrafficProfile profile = new TrafficProfile();
+
+  // the flows that end are replaced by new ones, so the traffic never stops
+  BenchmarkTraffic(int flows, String mix, long seed) {
+    profile.seed = seed;
+    profile.flows = 0L;
+    profile.concurrentFlows = flows;
+    profile.tcpRatio = MIX_TCP.equals(mix) ? 1.0 : MIX_UDP.equals(mix) ? 0.0 : 0.75;
+  }
+
+  // A single long-lived TCP flow
+  static BenchmarkTraffic singleFlow(long seed) {
+    BenchmarkTraffic traffic = new BenchmarkTraffic(1, MIX_TCP, seed);
+    traffic.profile.flows = 1L;
+    traffic.profile.longFlowRatio = 1.0;
+    return traffic;
+  }
+
+  // The decoded packets, one object each as a reader filling a new view per packet
+  BasicPacketInfo[] packets(int count) {
+    profile.packets = count;
+    TrafficGenerator generator = new TrafficGenerator(profile);
+    BasicPacketInfo[] packets = new BasicPacketInfo[count];
+    for (int i = 0; i < count; i++) {
+      if (!generator.next()) {
+        throw new IllegalStateException("The traffic ended after " + i + " packets");
+      }
+      packets[i] = new BasicPacketInfo();
+      PacketDecoder.decode(
+              generator.getFrame(),
+              0,
+              generator.getCapturedLength(),
+              PacketDecoder.LINKTYPE_ETHERNET,
+              generator.getTimestamp(),
+              true,
+              false,
+              packets[i]);
+    }
+    return packets;
+  }
+
+  void writePcap(File file, int count) throws IOException {
+    profile.packets = count;
+    new TrafficGenerator(profile).write(file);
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c)  Benedetto Marco Serinelli
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ch.unige.featureextractor.utils.packet;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Time and allocation per packet of FlowGenerator.addPacket: every invocation replays the same
+ * packets through a new generator, so the flow table grows from empty up to the flows count.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g"})
+public class FlowGeneratorBenchmark {
+  private static final int PACKETS = 1 << 18;
+  private static final long FLOW_TIMEOUT = 120000000L;
+  private static final long ACTIVITY_TIMEOUT = 5000000L;
+
+  @Param({"1000", "100000"})
+  public int flows;
+
+  @Param({"tcp", "udp", "mixed"})
+  public String mix;
+
+  private BasicPacketInfo[] packets;
+  private int finished;
+
+  @Setup
+  public void setup() {
+    packets = new BenchmarkTraffic(flows, mix, 42L).packets(PACKETS);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(PACKETS)
+  public int addPacket() {
+    FlowGenerator generator = new FlowGenerator(true, FLOW_TIMEOUT, ACTIVITY_TIMEOUT);
+    finished = 0;
+    generator.addFlowListener(flow -> finished++);
+    for (BasicPacketInfo packet : packets) {
+      generator.addPacket(packet);
+    }
+    generator.finishCurrentFlows();
+    generator.close();
+    return finished;
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c)  Benedetto Marco Serinelli
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ch.unige.featureextractor.utils.packet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.jnetpcap.PcapClosedException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Packet decode: the headers of a frame already in memory, and a whole pcap read through the
+ * mapped reader. The jnetpcap reader needs the native libraries and is left out, both readers
+ * fill the same BasicPacketInfo fields.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PacketReaderBenchmark {
+  private static final int PACKETS = 1 << 16;
+
+  @Param({"tcp", "udp", "mixed"})
+  public String mix;
+
+  private File pcap;
+  private ByteBuffer frames;
+  private final int[] offsets = new int[PACKETS];
+  private final int[] lengths = new int[PACKETS];
+  private final BasicPacketInfo packetInfo = new BasicPacketInfo();
+  private int cursor;
+
+  @Setup
+  public void setup() throws IOException {
+    pcap = File.createTempFile("benchmark", ".pcap");
+    new BenchmarkTraffic(4096, mix, 42L).writePcap(pcap, PACKETS);
+    frames = ByteBuffer.wrap(Files.readAllBytes(pcap.toPath()));
+    ByteBuffer headers = frames.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    int position = 24;
+    for (int i = 0; i < PACKETS; i++) {
+      lengths[i] = headers.getInt(position + 8);
+      offsets[i] = position + 16;
+      position = offsets[i] + lengths[i];
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    pcap.delete();
+  }
+
+  @Benchmark
+  public boolean decode() {
+    int i = cursor++ & (PACKETS - 1);
+    PacketDecoder.decode(
+            frames,
+            offsets[i],
+            lengths[i],
+            PacketDecoder.LINKTYPE_ETHERNET,
+            i,
+            true,
+            false,
+            packetInfo);
+    return packetInfo.hasFlagSYN();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(PACKETS)
+  public int mappedNextPacket() throws IOException {
+    MappedPacketReader reader = new MappedPacketReader(pcap.getPath(), true, false);
+    int valid = 0;
+    try {
+      while (true) {
+        if (reader.nextPacket(packetInfo)) {
+          valid++;
+        }
+      }
+    } catch (PcapClosedException e) {
+      reader.close();
+    }
+    return valid;
+  }
+}
@@ -20,7 +20,11 @@ package ch.unige.featureextractor;
 
 import ch.unige.featureextractor.utils.ExtractorFeaturesModel;
 import ch.unige.featureextractor.utils.Utility;
+import ch.unige.featureextractor.utils.file.BatchExtractor;
 import ch.unige.featureextractor.utils.file.FileRouterBuilder;
+import ch.unige.featureextractor.utils.packet.PacketLoader;
+import ch.unige.featureextractor.utils.packet.TailInputStream;
+import ch.unige.featureextractor.utils.packet.TrafficGenerator;
 import org.apache.camel.CamelContext;
 import org.apache.camel.impl.DefaultCamelContext;
 import org.apache.commons.lang3.StringUtils;
@@ -29,50 +33,61 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.PropertyResourceBundle;
+import java.util.ResourceBundle;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 public class Main {
   private static final Logger logger = LogManager.getLogger(Main.class);
   public static CamelContext camelCtx = null;
+  private static final String STREAM_OPTION = "--stream";
+  private static final String STDIN = "-";
+  private static final String TAIL_OPTION = "--tail";
+  private static final String BATCH_OPTION = "--batch";
+  private static final String DAEMON_OPTION = "--daemon";
+  private static final String GENERATE_OPTION = "--generate";
 
   public static void main(String[] args) {
     logger.info("Start");
-    /*
-        prevent tika initializing warnings
-        See https://stackoverflow.com/questions/48970160/how-do-i-configure-the-pom-xml-of-tika-to-stop-getting-all-the-license-dependenc
-    */
-    System.setProperty("tika.config", "tika-config.xml");
-    // create runtime lib dir to copy and load native libraries
-    File dirLib = new File("lib");
-    dirLib.mkdirs();
-    dirLib.deleteOnExit();
-    // check OS
-    if (SystemUtils.IS_OS_LINUX) {
-      if (Utility.copyAndLoadLib("libjnetpcap.so", dirLib)) {
-        logger.debug("libjnetpcap is loaded");
-      } else {
-        return;
-      }
-      if (Utility.copyAndLoadLib("libjnetpcap-pcap100.so", dirLib)) {
-        logger.debug("libjnetpcap-pcap100 is loaded");
-      } else {
-        return;
-      }
-    } else if (SystemUtils.IS_OS_WINDOWS) {
-      if (Utility.copyAndLoadLib("jnetpcap.dll", dirLib)) {
-        logger.debug("jnetpcap is loaded");
-      } else {
-        return;
-      }
-      if (Utility.copyAndLoadLib("jnetpcap-pcap100.dll", dirLib)) {
-        logger.debug("jnetpcap-pcap100 is loaded");
-      } else {
-        return;
-      }
-    } else {
-      // further OS can be added, the libraries may be compatible
-      logger.error("The OS is not supported");
+    // pipeline mode: --stream [pcap file, named pipe or - for stdin], the rows go to stdout
+    if (args.length > 0 && STREAM_OPTION.equals(args[0])) {
+      extractStream(args.length > 1 ? args[1] : STDIN);
+      return;
+    }
+    // tail mode: --tail <pcap still being written>, until the file is rotated or the JVM stops
+    if (args.length > 1 && TAIL_OPTION.equals(args[0])) {
+      tail(args[1]);
       return;
     }
+    // synthetic capture: --generate <pcap or pcapng> [profile], default profile config.properties
+    if (args.length > 1 && GENERATE_OPTION.equals(args[0])) {
+      generate(args[1], args.length > 2 ? args[2] : null);
+      return;
+    }
+    if (args.length > 0 && !BATCH_OPTION.equals(args[0]) && !DAEMON_OPTION.equals(args[0])) {
+      logger.error("Unknown option [" + args[0] + "]");
+      return;
+    }
+    // the pure-Java reader engine does not need the native libraries
+    if (PacketLoader.isNativeReaderRequired() && !loadNativeLibraries()) {
+      return;
+    }
+    // batch mode: --batch <pcap or dir>..., exits once every pcap is done
+    if (args.length > 0 && BATCH_OPTION.equals(args[0])) {
+      int workers = PacketLoader.getIntProperty(ExtractorFeaturesModel.rb, "pcap.files.workers", 1);
+      workers = PacketLoader.getIntProperty(ExtractorFeaturesModel.rb, "batch.workers", workers);
+      int failed = new BatchExtractor(workers).run(Arrays.asList(args).subList(1, args.length));
+      System.exit(failed > 0 ? 1 : 0);
+    }
+    // daemon mode, the default: watches pcap.files.source.dir until the JVM is stopped
     /*
      * Loading pcap file from dir
      * Please to set pcap.files.dir in config.properties
@@ -88,6 +103,7 @@ public class Main {
       return;
     }
     camelCtx = new DefaultCamelContext();
+    CountDownLatch stopped = new CountDownLatch(1);
     try {
       camelCtx.addRoutes(new FileRouterBuilder());
       camelCtx.start();
@@ -100,11 +116,119 @@ public class Main {
                                   logger.info("Stop apache camel");
                                 }
                                 logger.info("Kill Feature Extractor");
+                                stopped.countDown();
                               }));
-      while (true) {
-      }
+      // the main thread sleeps until the shutdown hook has stopped the route
+      stopped.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
     } catch (Exception e) {
       logger.error("Error to start camel context", e);
     }
   }
+
+  private static void extractStream(String source) {
+    // stdout is written without the PrintStream, the logs go to the log4j files
+    OutputStream output = new FileOutputStream(FileDescriptor.out);
+    try (InputStream input =
+                 STDIN.equals(source)
+                         ? new FileInputStream(FileDescriptor.in)
+                         : new FileInputStream(source)) {
+      PacketLoader.extractorFeatures(input, source, output);
+    } catch (IOException e) {
+      logger.error("Error to open [" + source + "]", e);
+    }
+  }
+
+  private static void tail(String source) {
+    long pollMillis = PacketLoader.getIntProperty(ExtractorFeaturesModel.rb, "tail.poll.ms", 500);
+    TailInputStream input;
+    try {
+      input = new TailInputStream(new File(source), pollMillis);
+    } catch (IOException e) {
+      logger.error("Error to open [" + source + "]", e);
+      return;
+    }
+    CountDownLatch done = new CountDownLatch(1);
+    // on shutdown the flows read so far are still written before the JVM exits
+    Runtime.getRuntime()
+            .addShutdownHook(
+                    new Thread(
+                            () -> {
+                              input.stop();
+                              try {
+                                done.await(30, TimeUnit.SECONDS);
+                              } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                              }
+                            }));
+    try {
+      PacketLoader.tailFeatures(input, source);
+    } finally {
+      done.countDown();
+    }
+  }
+
+  private static void generate(String output, String profile) {
+    ResourceBundle rb = ExtractorFeaturesModel.rb;
+    if (profile != null) {
+      try (InputStream input = new FileInputStream(profile)) {
+        rb = new PropertyResourceBundle(input);
+      } catch (IOException e) {
+        logger.error("Error to read profile [" + profile + "]", e);
+        return;
+      }
+    }
+    TrafficGenerator generator = new TrafficGenerator(rb);
+    long start = System.currentTimeMillis();
+    try {
+      generator.write(new File(output));
+    } catch (IOException e) {
+      logger.error("Error to write [" + output + "]", e);
+      return;
+    }
+    System.out.println(
+            String.format(
+                    "%d packets of %d flows written to %s in %.1f s",
+                    generator.getPackets(),
+                    generator.getFlows(),
+                    output,
+                    (System.currentTimeMillis() - start) / 1000.0));
+  }
+
+  private static boolean loadNativeLibraries() {
+    // create runtime lib dir to copy and load native libraries
+    File dirLib = new File("lib");
+    dirLib.mkdirs();
+    dirLib.deleteOnExit();
+    // check OS
+    if (SystemUtils.IS_OS_LINUX) {
+      if (Utility.copyAndLoadLib("libjnetpcap.so", dirLib)) {
+        logger.debug("libjnetpcap is loaded");
+      } else {
+        return false;
+      }
+      if (Utility.copyAndLoadLib("libjnetpcap-pcap100.so", dirLib)) {
+        logger.debug("libjnetpcap-pcap100 is loaded");
+      } else {
+        return false;
+      }
+    } else if (SystemUtils.IS_OS_WINDOWS) {
+      if (Utility.copyAndLoadLib("jnetpcap.dll", dirLib)) {
+        logger.debug("jnetpcap is loaded");
+      } else {
+        return false;
+      }
+      if (Utility.copyAndLoadLib("jnetpcap-pcap100.dll", dirLib)) {
+        logger.debug("jnetpcap-pcap100 is loaded");
+      } else {
+        return false;
+      }
+    } else {
+      // further OS can be added, the libraries may be compatible
+      logger.error("The OS is not supported");
+      return false;
+    }
+    return true;
+  }
 }
@@ -24,7 +24,7 @@ public class ExtractorFeaturesModel {
   public static final String LINE_SEP = System.lineSeparator();
   public static final String FILE_SEP = System.getProperty("file.separator");
   public static final String CSV_SUFFIX = ".csv";
+  public static final String ARROW_SUFFIX = ".arrow";
   public static final String SEPARATOR = ",";
   public static ResourceBundle rb = ResourceBundle.getBundle("config");
-  public static String pcapTikaExtension = "application/vnd.tcpdump.pcap";
 }
@@ -18,12 +18,12 @@
  */
 package ch.unige.featureextractor.utils;
 
+import ch.unige.featureextractor.utils.packet.CsvChannel;
+import ch.unige.featureextractor.utils.packet.CsvEncoder;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.apache.tika.io.IOUtils;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
@@ -69,21 +69,20 @@ public class InsertCsvRow {
         }
 
         File file = new File(savepath + filename);
-        FileOutputStream output = null;
+        boolean writeHeader = !file.exists() && header != null;
+        CsvChannel output = null;
 
         try {
-            if (file.exists()) {
-                output = new FileOutputStream(file, true);
-            } else {
-                if (file.createNewFile()) {
-                    output = new FileOutputStream(file);
-                }
-                if (header != null) {
-                    output.write((header + ExtractorFeaturesModel.LINE_SEP).getBytes());
-                }
+            output = new CsvChannel(file);
+            if (writeHeader) {
+                output.writeLine(header);
             }
+            CsvEncoder encoder = new CsvEncoder();
             for (String row : rows) {
-                output.write((row + ExtractorFeaturesModel.LINE_SEP).getBytes());
+                encoder.reset();
+                encoder.writeString(row);
+                encoder.endRow();
+                output.write(encoder);
             }
 
         } catch (IOException e) {
@@ -91,8 +90,7 @@ public class InsertCsvRow {
         } finally {
             try {
                 if (output != null) {
-                    output.flush();
-                    IOUtils.closeQuietly(output);
+                    output.close();
                 }
             } catch (IOException e) {
                 logger.debug(e.getMessage());
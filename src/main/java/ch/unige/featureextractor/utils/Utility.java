@@ -18,19 +18,24 @@
  */
 package ch.unige.featureextractor.utils;
 
+import ch.unige.featureextractor.utils.packet.CaptureFormat;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.apache.tika.Tika;
-import org.apache.tika.io.IOUtils;
 
 import java.io.*;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public class Utility {
   private static final Logger logger = LogManager.getLogger(Utility.class);
+  private static final ConcurrentMap<String, DateTimeFormatter> formatters =
+          new ConcurrentHashMap<>();
 
   public static boolean isPCAPFile(File file) {
     try {
@@ -38,9 +43,10 @@ public class Utility {
         logger.error("File null");
         return false;
       }
-      String detection = new Tika().detect(file);
-      if (detection.equalsIgnoreCase(ExtractorFeaturesModel.pcapTikaExtension)) {
-        logger.debug("File is pcap");
+      // the first bytes are enough, pcapng and nanosecond pcaps included
+      String format = CaptureFormat.sniff(file);
+      if (format != null) {
+        logger.debug("File is " + format);
         return true;
       }
     } catch (IOException e) {
@@ -50,6 +56,14 @@ public class Utility {
     return false;
   }
 
+  // Optional property: the default is used when the key is missing or blank
+  public static String getProperty(ResourceBundle rb, String key, String defaultValue) {
+    if (rb.containsKey(key) && StringUtils.isNotBlank(rb.getString(key))) {
+      return rb.getString(key).trim();
+    }
+    return defaultValue;
+  }
+
   public static boolean copyAndLoadLib(String libName, File parentDir) {
     boolean success = false;
     InputStream is = ClassLoader.class.getResourceAsStream(String.format("/native/%s", libName));
@@ -57,14 +71,14 @@ public class Utility {
     try {
       file = new File(parentDir.getAbsolutePath() + File.separator + libName);
       file.createNewFile();
-      OutputStream os = new FileOutputStream(file);
-      byte[] buffer = new byte[1024];
-      int length;
-      while ((length = is.read(buffer)) != -1) {
-        os.write(buffer, 0, length);
+      try (InputStream in = is;
+           OutputStream os = new FileOutputStream(file)) {
+        byte[] buffer = new byte[1024];
+        int length;
+        while ((length = in.read(buffer)) != -1) {
+          os.write(buffer, 0, length);
+        }
       }
-      IOUtils.closeQuietly(is);
-      IOUtils.closeQuietly(os);
       logger.debug(file.getAbsolutePath());
       System.load(file.getAbsolutePath());
       file.deleteOnExit();
@@ -87,7 +101,7 @@ public class Utility {
       format = "dd/MM/yyyy hh:mm:ss";
     }
 
-    DateTimeFormatter formatter = DateTimeFormatter.ofPattern(format);
+    DateTimeFormatter formatter = formatters.computeIfAbsent(format, DateTimeFormatter::ofPattern);
     LocalDateTime ldt = LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneId.systemDefault());
     return ldt.format(formatter);
   }
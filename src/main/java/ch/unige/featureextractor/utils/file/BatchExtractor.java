@@ -0,0 +1,134 @@
+/*
+ * Copyright (c)  Benedetto Marco Serinelli
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ch.unige.featureextractor.utils.file;
+
+import ch.unige.featureextractor.utils.Utility;
+import ch.unige.featureextractor.utils.packet.PacketLoader;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/*
+ * Batch mode: extracts the features of the pcaps given on the command line, the directories
+ * walked recursively without their hidden subdirectories (.camel, .checkpoint), on a fixed pool
+ * of workers, and returns once every file is done.
+ */
+public class BatchExtractor {
+  private static final Logger logger = LogManager.getLogger(BatchExtractor.class);
+  private static final double MB = 1024.0 * 1024.0;
+  private final int workers;
+
+  public BatchExtractor(int workers) {
+    this.workers = Math.max(1, workers);
+  }
+
+  // Returns the number of pcaps that could not be processed
+  public int run(List<String> paths) {
+    List<File> pcaps = new ArrayList<>();
+    for (String path : paths) {
+      collect(new File(path), pcaps);
+    }
+    logger.info("Batch of " + pcaps.size() + " pcaps on " + workers + " workers");
+    AtomicInteger workerCount = new AtomicInteger();
+    ExecutorService executor =
+            Executors.newFixedThreadPool(
+                    workers, r -> new Thread(r, "BatchWorker-" + workerCount.incrementAndGet()));
+    long start = System.nanoTime();
+    List<Future<Boolean>> results = new ArrayList<>();
+    for (File pcap : pcaps) {
+      results.add(executor.submit(() -> PacketLoader.extractorFeatures(pcap)));
+    }
+    int failed = 0;
+    long bytes = 0;
+    for (int i = 0; i < results.size(); i++) {
+      try {
+        if (results.get(i).get()) {
+          bytes += pcaps.get(i).length();
+        } else {
+          failed++;
+        }
+      } catch (Exception e) {
+        logger.error("Error to process [" + pcaps.get(i) + "]", e);
+        failed++;
+      }
+    }
+    executor.shutdown();
+    double seconds = Math.max(1e-3, (System.nanoTime() - start) / 1e9);
+    System.out.println(
+            String.format(
+                    "%d pcaps (%.1f MB) in %.1f s: %.2f pcaps/s, %.1f MB/s, %d failed",
+                    pcaps.size() - failed,
+                    bytes / MB,
+                    seconds,
+                    (pcaps.size() - failed) / seconds,
+                    bytes / MB / seconds,
+                    failed));
+    return failed;
+  }
+
+  private static void collect(File path, List<File> pcaps) {
+    if (path.isFile()) {
+      if (Utility.isPCAPFile(path)) {
+        pcaps.add(path);
+      } else {
+        logger.warn("Skip [" + path + "], not a pcap");
+      }
+      return;
+    } else if (!path.isDirectory()) {
+      logger.warn("Skip [" + path + "], no such file or directory");
+      return;
+    }
+    try (Stream<Path> walk = Files.walk(path.toPath())) {
+      List<Path> files =
+              walk.filter(p -> !isHidden(path.toPath(), p) && Files.isRegularFile(p))
+                      .sorted()
+                      .collect(Collectors.toList());
+      for (Path file : files) {
+        if (Utility.isPCAPFile(file.toFile())) {
+          pcaps.add(file.toFile());
+        }
+      }
+    } catch (IOException e) {
+      logger.error("Error to list [" + path + "]", e);
+    }
+  }
+
+  // A file under a directory starting with a dot, below the walked root
+  private static boolean isHidden(Path root, Path file) {
+    Path relative = root.relativize(file.getParent() == null ? file : file.getParent());
+    for (Path name : relative) {
+      if (name.toString().startsWith(".")) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c)  Benedetto Marco Serinelli
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ch.unige.featureextractor.utils.file;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.ExtendedExchange;
+import org.apache.camel.Processor;
+import org.apache.camel.component.file.GenericFile;
+import org.apache.camel.support.SynchronizationAdapter;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.Semaphore;
+
+/*
+ * Admission control of the ingestion route: it blocks the file poller until a slot is free and the
+ * estimated heap of the file fits the memory budget, then releases both when the exchange is done.
+ */
+public class FileAdmission implements Processor {
+  private static final Logger logger = LogManager.getLogger(FileAdmission.class);
+  private static final long MB = 1024L * 1024L;
+  private final Semaphore slots;
+  private final Semaphore memory;
+  private final int memoryBudget;
+  private final double memoryRatio;
+
+  public FileAdmission(int maxInFlight, double memoryFraction, double memoryRatio) {
+    this.slots = new Semaphore(maxInFlight, true);
+    this.memoryBudget =
+            (int) Math.max(1L, (long) (Runtime.getRuntime().maxMemory() * memoryFraction / MB));
+    this.memory = new Semaphore(memoryBudget, true);
+    this.memoryRatio = memoryRatio;
+    logger.info("Files in flight [" + maxInFlight + "], memory budget [" + memoryBudget + " MB]");
+  }
+
+  @Override
+  public void process(Exchange exchange) throws InterruptedException {
+    GenericFile<?> file = exchange.getIn().getBody(GenericFile.class);
+    // a file larger than the whole budget is admitted alone
+    long estimate = Math.max(1L, (long) (file.getFileLength() * memoryRatio / MB));
+    int weight = (int) Math.min(memoryBudget, estimate);
+    slots.acquire();
+    try {
+      memory.acquire(weight);
+    } catch (InterruptedException e) {
+      slots.release();
+      throw e;
+    }
+    logger.debug("Admit [" + file.getAbsoluteFilePath() + "] with " + weight + " MB");
+    exchange
+            .adapt(ExtendedExchange.class)
+            .addOnCompletion(
+                    new SynchronizationAdapter() {
+                      @Override
+                      public void onDone(Exchange exchange) {
+                        memory.release(weight);
+                        slots.release();
+                      }
+                    });
+  }
+}
@@ -36,8 +36,9 @@ public class FileConsumer implements Processor {
     logger.debug("Generic file: " + exchange.getIn().getBody(GenericFile.class).getAbsoluteFilePath());
     File file = new File(exchange.getIn().getBody(GenericFile.class).getAbsoluteFilePath());
     if (Utility.isPCAPFile(file)) {
-      PacketLoader.extractorFeatures(file);
-
+      if (!PacketLoader.extractorFeatures(file)) {
+        logger.warn("Features of [" + file + "] not extracted by every extractor");
+      }
     }
   }
 }
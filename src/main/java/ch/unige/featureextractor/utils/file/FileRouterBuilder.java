@@ -19,17 +19,46 @@
 package ch.unige.featureextractor.utils.file;
 
 import ch.unige.featureextractor.utils.ExtractorFeaturesModel;
+import ch.unige.featureextractor.utils.Utility;
 import org.apache.camel.builder.RouteBuilder;
-import org.apache.camel.model.RouteDefinition;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 
 import java.io.File;
+import java.util.ResourceBundle;
 
 public class FileRouterBuilder extends RouteBuilder {
+  private static final Logger logger = LogManager.getLogger(FileRouterBuilder.class);
 
   @Override
   public void configure() {
-    RouteDefinition def = from("file://" + ExtractorFeaturesModel.rb.getString("pcap.files.source.dir"));
-    def.process(new FileConsumer());
-    def.to("file://" + ExtractorFeaturesModel.rb.getString("pcap.files.source.dir") + File.separator + ".camel");
+    ResourceBundle rb = ExtractorFeaturesModel.rb;
+    String sourceDir = rb.getString("pcap.files.source.dir");
+    int workers = Integer.parseInt(Utility.getProperty(rb, "pcap.files.workers", "1"));
+    int maxInFlight =
+            Integer.parseInt(
+                    Utility.getProperty(rb, "pcap.files.max.inflight", String.valueOf(workers)));
+    double memoryFraction =
+            Double.parseDouble(Utility.getProperty(rb, "pcap.files.memory.fraction", "0.5"));
+    double memoryRatio =
+            Double.parseDouble(Utility.getProperty(rb, "pcap.files.memory.ratio", "1.0"));
+    maxInFlight = Math.max(1, maxInFlight);
+    if (workers > maxInFlight) {
+      // a worker without an admitted file would only wait, the cap on the files in flight wins
+      logger.warn(
+              "pcap.files.workers ["
+                      + workers
+                      + "] above pcap.files.max.inflight, use "
+                      + maxInFlight
+                      + " workers");
+      workers = maxInFlight;
+    }
+    // the admission blocks the poller, so the pool queue never holds more than maxInFlight files
+    from("file://" + sourceDir)
+            .process(new FileAdmission(maxInFlight, memoryFraction, memoryRatio))
+            .threads(workers, workers, "FileConsumer")
+            .maxQueueSize(maxInFlight)
+            .process(new FileConsumer())
+            .to("file://" + sourceDir + File.separator + ".camel");
   }
 }
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c)  Benedetto Marco Serinelli
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ch.unige.featureextractor.utils.packet;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.TimeStampMilliVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowFileWriter;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.TimeUnit;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.arrow.vector.types.pojo.Schema;
+import org.jnetpcap.packet.format.FormatUtils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Writes the flows of an extractor as an Arrow IPC file with one typed column per feature of the
+ * ColumnPlan: the numeric features are float64, the timestamp is in milliseconds and the flow id,
+ * the addresses and the label are utf8. A record batch is written every batchRows flows.
+ * An instance is not thread safe, FlowWriter calls it while holding its lock.
+ */
+public class ArrowFlowWriter implements FeatureWriter, Closeable {
+  private static final String MEMORY_UTIL = "org.apache.arrow.memory.util.MemoryUtil";
+  private static final String ADD_OPENS = "--add-opens=java.base/java.nio=ALL-UNNAMED";
+  private final ColumnPlan plan;
+  private final int batchRows;
+  private final BufferAllocator allocator;
+  private final VectorSchemaRoot root;
+  private final FieldVector[] vectors;
+  private final ArrowFileWriter writer;
+  private int row;
+  private int column;
+
+  public ArrowFlowWriter(File file, ColumnPlan plan, int batchRows) throws IOException {
+    checkMemoryAccess();
+    this.plan = plan;
+    this.batchRows = batchRows;
+    List<Field> fields = new ArrayList<>();
+    for (FlowFeature feature : plan.getFeatures()) {
+      fields.add(new Field(feature.getName(), FieldType.nullable(typeOf(feature)), null));
+    }
+    this.allocator = new RootAllocator();
+    this.root = VectorSchemaRoot.create(new Schema(fields), allocator);
+    this.vectors = new FieldVector[fields.size()];
+    for (int i = 0; i < vectors.length; i++) {
+      vectors[i] = root.getVector(i);
+    }
+    FileOutputStream output = null;
+    try {
+      output = new FileOutputStream(file);
+      this.writer = new ArrowFileWriter(root, null, output.getChannel());
+      writer.start();
+    } catch (IOException e) {
+      if (output != null) {
+        output.close();
+      }
+      root.close();
+      allocator.close();
+      throw e;
+    }
+    root.allocateNew();
+  }
+
+  /*
+   * The Arrow memory module reads the address of the direct buffers through java.nio, closed to
+   * other modules since Java 16: without --add-opens it only fails on the first value written.
+   */
+  private static void checkMemoryAccess() throws IOException {
+    try {
+      Class.forName(MEMORY_UTIL, true, ArrowFlowWriter.class.getClassLoader());
+    } catch (ClassNotFoundException | LinkageError e) {
+      throw new IOException(
+              "Arrow outputs need the JVM option " + ADD_OPENS + " on Java 16 and later", e);
+    }
+  }
+
+  private static ArrowType typeOf(FlowFeature feature) {
+    if (feature == FlowFeature.tstp) {
+      return new ArrowType.Timestamp(TimeUnit.MILLISECOND, null);
+    } else if (feature.isNumeric()) {
+      // the unavailable statistics are written as a long 0, the available ones as doubles
+      return new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE);
+    }
+    return ArrowType.Utf8.INSTANCE;
+  }
+
+  public void write(BasicFlow flow) throws IOException {
+    column = 0;
+    flow.writeFeatures(plan, this);
+    row++;
+    if (row == batchRows) {
+      writeBatch();
+    }
+  }
+
+  private void writeBatch() throws IOException {
+    root.setRowCount(row);
+    writer.writeBatch();
+    root.allocateNew();
+    row = 0;
+  }
+
+  @Override
+  public void writeString(String value) {
+    byte[] text = value.getBytes(StandardCharsets.UTF_8);
+    ((VarCharVector) vectors[column++]).setSafe(row, text);
+  }
+
+  @Override
+  public void writeLong(long value) {
+    writeDouble(value);
+  }
+
+  @Override
+  public void writeDouble(double value) {
+    ((Float8Vector) vectors[column++]).setSafe(row, value);
+  }
+
+  @Override
+  public void writeAddress(long high, long low, int length) {
+    writeString(FormatUtils.ip(BasicPacketInfo.toBytes(high, low, length)));
+  }
+
+  @Override
+  public void writeTimestamp(long epochMillis) {
+    ((TimeStampMilliVector) vectors[column++]).setSafe(row, epochMillis);
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      if (row > 0) {
+        writeBatch();
+      }
+      writer.end();
+    } finally {
+      writer.close();
+      root.close();
+      allocator.close();
+    }
+  }
+}
@@ -18,11 +18,9 @@
  */
 package ch.unige.featureextractor.utils.packet;
 
-import ch.unige.featureextractor.utils.ExtractorFeaturesModel;
-import ch.unige.featureextractor.utils.Utility;
-import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
 import org.jnetpcap.packet.format.FormatUtils;
 
+import java.nio.ByteBuffer;
 import java.util.*;
 
 public class BasicFlow {
@@ -32,15 +30,23 @@ public class BasicFlow {
   private final long fbulkSizeTotal = 0;
   private final long fbulkStateCount = 0;
   private final long flastBulkTS = 0;
-  private SummaryStatistics fwdPktStats = null;
-  private SummaryStatistics bwdPktStats = null;
-  private List<BasicPacketInfo> forward = null;
-  private List<BasicPacketInfo> backward = null;
+  private OnlineStatistics fwdPktStats = null;
+  private OnlineStatistics bwdPktStats = null;
+  // only the packet counts are used, the packets themselves are never retained by the flow
+  private int forwardCount;
+  private int backwardCount;
   private long forwardBytes;
   private long backwardBytes;
   private long fHeaderBytes;
   private long bHeaderBytes;
-  private HashMap<String, MutableInt> flagCounts;
+  private int finCount;
+  private int synCount;
+  private int rstCount;
+  private int pshCount;
+  private int ackCount;
+  private int urgCount;
+  private int cwrCount;
+  private int eceCount;
   private int fPSH_cnt;
   private int bPSH_cnt;
   private int fURG_cnt;
@@ -49,8 +55,12 @@ public class BasicFlow {
   private long min_seg_size_forward;
   private int Init_Win_bytes_forward = 0;
   private int Init_Win_bytes_backward = 0;
-  private byte[] src;
-  private byte[] dst;
+  // addresses as in BasicPacketInfo, no length while the flow has no packet
+  private long srcHigh;
+  private long srcLow;
+  private long dstHigh;
+  private long dstLow;
+  private int addressLength;
   private int srcPort;
   private int dstPort;
   private int protocol;
@@ -58,12 +68,12 @@ public class BasicFlow {
   private long startActiveTime;
   private long endActiveTime;
   private String flowId = null;
-  private SummaryStatistics flowIAT = null;
-  private SummaryStatistics forwardIAT = null;
-  private SummaryStatistics backwardIAT = null;
-  private SummaryStatistics flowLengthStats = null;
-  private SummaryStatistics flowActive = null;
-  private SummaryStatistics flowIdle = null;
+  private OnlineStatistics flowIAT = null;
+  private OnlineStatistics forwardIAT = null;
+  private OnlineStatistics backwardIAT = null;
+  private OnlineStatistics flowLengthStats = null;
+  private OnlineStatistics flowActive = null;
+  private OnlineStatistics flowIdle = null;
   private long flowLastSeen;
   private long forwardLastSeen;
   private long backwardLastSeen;
@@ -77,6 +87,12 @@ public class BasicFlow {
   private long bbulkStartHelper = 0;
   private long bbulkSizeHelper = 0;
   private long blastBulkTS = 0;
+  // flow table key and timing wheel links, managed by FlowGenerator and FlowTimingWheel
+  FlowKey tableKey;
+  long expiryTime;
+  int wheelSlot = -1;
+  BasicFlow wheelPrev;
+  BasicFlow wheelNext;
 
   public BasicFlow(
           boolean isBidirectional,
@@ -89,10 +105,14 @@ public class BasicFlow {
     this.initParameters();
     this.isBidirectional = isBidirectional;
     this.firstPacket(packet);
-    this.src = flowSrc;
-    this.dst = flowDst;
+    this.srcHigh = BasicPacketInfo.highWord(flowSrc);
+    this.srcLow = BasicPacketInfo.lowWord(flowSrc);
+    this.dstHigh = BasicPacketInfo.highWord(flowDst);
+    this.dstLow = BasicPacketInfo.lowWord(flowDst);
+    this.addressLength = flowSrc.length;
     this.srcPort = flowSrcPort;
     this.dstPort = flowDstPort;
+    this.flowId = packet.getFlowId();
   }
 
   public BasicFlow(boolean isBidirectional, BasicPacketInfo packet) {
@@ -103,24 +123,22 @@ public class BasicFlow {
   }
 
   public void initParameters() {
-    this.forward = new ArrayList<>();
-    this.backward = new ArrayList<>();
-    this.flowIAT = new SummaryStatistics();
-    this.forwardIAT = new SummaryStatistics();
-    this.backwardIAT = new SummaryStatistics();
-    this.flowActive = new SummaryStatistics();
-    this.flowIdle = new SummaryStatistics();
-    this.flowLengthStats = new SummaryStatistics();
-    this.fwdPktStats = new SummaryStatistics();
-    this.bwdPktStats = new SummaryStatistics();
-    this.flagCounts = new HashMap<>();
+    this.forwardCount = 0;
+    this.backwardCount = 0;
+    this.flowIAT = new OnlineStatistics();
+    this.forwardIAT = new OnlineStatistics();
+    this.backwardIAT = new OnlineStatistics();
+    this.flowActive = new OnlineStatistics();
+    this.flowIdle = new OnlineStatistics();
+    this.flowLengthStats = new OnlineStatistics();
+    this.fwdPktStats = new OnlineStatistics();
+    this.bwdPktStats = new OnlineStatistics();
     initFlags();
     this.forwardBytes = 0L;
     this.backwardBytes = 0L;
     this.startActiveTime = 0L;
     this.endActiveTime = 0L;
-    this.src = null;
-    this.dst = null;
+    this.addressLength = 0;
     this.fPSH_cnt = 0;
     this.bPSH_cnt = 0;
     this.fURG_cnt = 0;
@@ -139,15 +157,16 @@ public class BasicFlow {
     this.endActiveTime = packet.getTimeStamp();
     this.flowLengthStats.addValue((double) packet.getPayloadBytes());
 
-    if (this.src == null) {
-      this.src = packet.getSrc();
+    if (this.addressLength == 0) {
+      this.srcHigh = packet.getSrcHigh();
+      this.srcLow = packet.getSrcLow();
       this.srcPort = packet.getSrcPort();
-    }
-    if (this.dst == null) {
-      this.dst = packet.getDst();
+      this.dstHigh = packet.getDstHigh();
+      this.dstLow = packet.getDstLow();
       this.dstPort = packet.getDstPort();
+      this.addressLength = packet.getAddressLength();
     }
-    if (Arrays.equals(this.src, packet.getSrc())) {
+    if (packet.hasSrc(srcHigh, srcLow, addressLength)) {
       this.min_seg_size_forward = packet.getHeaderBytes();
       Init_Win_bytes_forward = packet.getTCPWindow();
       this.flowLengthStats.addValue((double) packet.getPayloadBytes());
@@ -155,7 +174,7 @@ public class BasicFlow {
       this.fHeaderBytes = packet.getHeaderBytes();
       this.forwardLastSeen = packet.getTimeStamp();
       this.forwardBytes += packet.getPayloadBytes();
-      this.forward.add(packet);
+      this.forwardCount++;
       if (packet.hasFlagPSH()) {
         this.fPSH_cnt++;
       }
@@ -169,7 +188,7 @@ public class BasicFlow {
       this.bHeaderBytes = packet.getHeaderBytes();
       this.backwardLastSeen = packet.getTimeStamp();
       this.backwardBytes += packet.getPayloadBytes();
-      this.backward.add(packet);
+      this.backwardCount++;
       if (packet.hasFlagPSH()) {
         this.bPSH_cnt++;
       }
@@ -178,7 +197,6 @@ public class BasicFlow {
       }
     }
     this.protocol = packet.getProtocol();
-    this.flowId = packet.getFlowId();
   }
 
   public void addPacket(BasicPacketInfo packet) {
@@ -189,15 +207,15 @@ public class BasicFlow {
     if (isBidirectional) {
       this.flowLengthStats.addValue((double) packet.getPayloadBytes());
 
-      if (Arrays.equals(this.src, packet.getSrc())) {
+      if (packet.hasSrc(srcHigh, srcLow, addressLength)) {
         if (packet.getPayloadBytes() >= 1) {
           this.Act_data_pkt_forward++;
         }
         this.fwdPktStats.addValue((double) packet.getPayloadBytes());
         this.fHeaderBytes += packet.getHeaderBytes();
-        this.forward.add(packet);
+        this.forwardCount++;
         this.forwardBytes += packet.getPayloadBytes();
-        if (this.forward.size() > 1)
+        if (this.forwardCount > 1)
           this.forwardIAT.addValue(currentTimestamp - this.forwardLastSeen);
         this.forwardLastSeen = currentTimestamp;
         this.min_seg_size_forward = Math.min(packet.getHeaderBytes(), this.min_seg_size_forward);
@@ -206,9 +224,9 @@ public class BasicFlow {
         this.bwdPktStats.addValue((double) packet.getPayloadBytes());
         Init_Win_bytes_backward = packet.getTCPWindow();
         this.bHeaderBytes += packet.getHeaderBytes();
-        this.backward.add(packet);
+        this.backwardCount++;
         this.backwardBytes += packet.getPayloadBytes();
-        if (this.backward.size() > 1)
+        if (this.backwardCount > 1)
           this.backwardIAT.addValue(currentTimestamp - this.backwardLastSeen);
         this.backwardLastSeen = currentTimestamp;
       }
@@ -219,7 +237,7 @@ public class BasicFlow {
       this.fwdPktStats.addValue((double) packet.getPayloadBytes());
       this.flowLengthStats.addValue((double) packet.getPayloadBytes());
       this.fHeaderBytes += packet.getHeaderBytes();
-      this.forward.add(packet);
+      this.forwardCount++;
       this.forwardBytes += packet.getPayloadBytes();
       this.forwardIAT.addValue(currentTimestamp - this.forwardLastSeen);
       this.forwardLastSeen = currentTimestamp;
@@ -233,20 +251,20 @@ public class BasicFlow {
   public double getfPktsPerSecond() {
     long duration = this.flowLastSeen - this.flowStartTime;
     if (duration > 0) {
-      return (this.forward.size() / ((double) duration / 1000000L));
+      return (this.forwardCount / ((double) duration / 1000000L));
     } else return 0;
   }
 
   public double getbPktsPerSecond() {
     long duration = this.flowLastSeen - this.flowStartTime;
     if (duration > 0) {
-      return (this.backward.size() / ((double) duration / 1000000L));
+      return (this.backwardCount / ((double) duration / 1000000L));
     } else return 0;
   }
 
   public double getDownUpRatio() {
-    if (this.forward.size() > 0) {
-      return (this.backward.size() * 1D / this.forward.size());
+    if (this.forwardCount > 0) {
+      return (this.backwardCount * 1D / this.forwardCount);
     }
     return 0;
   }
@@ -259,51 +277,51 @@ public class BasicFlow {
   }
 
   public double fAvgSegmentSize() {
-    if (this.forward.size() != 0) return (this.fwdPktStats.getSum() / (double) this.forward.size());
+    if (this.forwardCount != 0) return (this.fwdPktStats.getSum() / (double) this.forwardCount);
     return 0;
   }
 
   public double bAvgSegmentSize() {
-    if (this.backward.size() != 0)
-      return (this.bwdPktStats.getSum() / (double) this.backward.size());
+    if (this.backwardCount != 0)
+      return (this.bwdPktStats.getSum() / (double) this.backwardCount);
     return 0;
   }
 
   public void initFlags() {
-    flagCounts.put("FIN", new MutableInt());
-    flagCounts.put("SYN", new MutableInt());
-    flagCounts.put("RST", new MutableInt());
-    flagCounts.put("PSH", new MutableInt());
-    flagCounts.put("ACK", new MutableInt());
-    flagCounts.put("URG", new MutableInt());
-    flagCounts.put("CWR", new MutableInt());
-    flagCounts.put("ECE", new MutableInt());
+    finCount = 0;
+    synCount = 0;
+    rstCount = 0;
+    pshCount = 0;
+    ackCount = 0;
+    urgCount = 0;
+    cwrCount = 0;
+    eceCount = 0;
   }
 
   public void checkFlags(BasicPacketInfo packet) {
     if (packet.hasFlagFIN()) {
-      flagCounts.get("FIN").increment();
+      finCount++;
     }
     if (packet.hasFlagSYN()) {
-      flagCounts.get("SYN").increment();
+      synCount++;
     }
     if (packet.hasFlagRST()) {
-      flagCounts.get("RST").increment();
+      rstCount++;
     }
     if (packet.hasFlagPSH()) {
-      flagCounts.get("PSH").increment();
+      pshCount++;
     }
     if (packet.hasFlagACK()) {
-      flagCounts.get("ACK").increment();
+      ackCount++;
     }
     if (packet.hasFlagURG()) {
-      flagCounts.get("URG").increment();
+      urgCount++;
     }
     if (packet.hasFlagCWR()) {
-      flagCounts.get("CWR").increment();
+      cwrCount++;
     }
     if (packet.hasFlagECE()) {
-      flagCounts.get("ECE").increment();
+      eceCount++;
     }
   }
 
@@ -314,7 +332,7 @@ public class BasicFlow {
 
   public long getSflow_fpackets() {
     if (sfCount <= 0) return 0;
-    return this.forward.size() / sfCount;
+    return this.forwardCount / sfCount;
   }
 
   public long getSflow_bbytes() {
@@ -324,7 +342,7 @@ public class BasicFlow {
 
   public long getSflow_bpackets() {
     if (sfCount <= 0) return 0;
-    return this.backward.size() / sfCount;
+    return this.backwardCount / sfCount;
   }
 
   void detectUpdateSubflows(BasicPacketInfo packet) {
@@ -340,13 +358,9 @@ public class BasicFlow {
   }
 
   public void updateFlowBulk(BasicPacketInfo packet) {
-    if (this.src == packet.getSrc()) {
-      // update forward Bulk
-      updateBulk(packet, blastBulkTS);
-    } else {
-      // update backward Bulk
-      updateBulk(packet, flastBulkTS);
-    }
+    // the former forward branch compared the flow src with a fresh copy of the packet src and
+    // was never taken: every packet goes through the backward bulk, as it always did
+    updateBulk(packet, flastBulkTS);
   }
 
   public void updateBulk(BasicPacketInfo packet, long tsOflastBulkInOther) {
@@ -479,18 +493,18 @@ public class BasicFlow {
 
   public int packetCount() {
     if (isBidirectional) {
-      return (this.forward.size() + this.backward.size());
+      return (this.forwardCount + this.backwardCount);
     } else {
-      return this.forward.size();
+      return this.forwardCount;
     }
   }
 
   public byte[] getSrc() {
-    return Arrays.copyOf(src, src.length);
+    return BasicPacketInfo.toBytes(srcHigh, srcLow, addressLength);
   }
 
   public byte[] getDst() {
-    return Arrays.copyOf(dst, dst.length);
+    return BasicPacketInfo.toBytes(dstHigh, dstLow, addressLength);
   }
 
   public int getSrcPort() {
@@ -509,412 +523,547 @@ public class BasicFlow {
     this.protocol = protocol;
   }
 
+  // Built only when the Flow ID column is written, from the direction of the first packet
+  public String getFlowId() {
+    if (flowId == null) {
+      flowId =
+              FormatUtils.ip(getSrc())
+                      + "-"
+                      + FormatUtils.ip(getDst())
+                      + "-"
+                      + srcPort
+                      + "-"
+                      + dstPort
+                      + "-"
+                      + protocol;
+    }
+    return flowId;
+  }
+
   public long getFlowStartTime() {
     return flowStartTime;
   }
 
-  public String dumpFlowBasedFeaturesEx(ResourceBundle rb) {
-    StringBuilder dump = new StringBuilder();
-    if (rb.containsKey(FlowFeature.fid.getCvsField())) {
-      dump.append(flowId).append(ExtractorFeaturesModel.SEPARATOR); // 1
-    }
-    if (rb.containsKey(FlowFeature.src_ip.getCvsField())) {
-      dump.append(FormatUtils.ip(src)).append(ExtractorFeaturesModel.SEPARATOR); // 2
-    }
+  /*
+   * Fixed layout of the flow state, used to keep flows outside of the heap: every field updated by
+   * the packets is written, a field added to the flow has to be added here too.
+   */
+  static final int STATE_BYTES = 672;
+
+  void writeState(ByteBuffer buf, int offset) {
+    int index = offset;
+    buf.putLong(index, forwardBytes);
+    index += 8;
+    buf.putLong(index, backwardBytes);
+    index += 8;
+    buf.putLong(index, fHeaderBytes);
+    index += 8;
+    buf.putLong(index, bHeaderBytes);
+    index += 8;
+    buf.putLong(index, Act_data_pkt_forward);
+    index += 8;
+    buf.putLong(index, min_seg_size_forward);
+    index += 8;
+    buf.putLong(index, srcHigh);
+    index += 8;
+    buf.putLong(index, srcLow);
+    index += 8;
+    buf.putLong(index, dstHigh);
+    index += 8;
+    buf.putLong(index, dstLow);
+    index += 8;
+    buf.putLong(index, flowStartTime);
+    index += 8;
+    buf.putLong(index, startActiveTime);
+    index += 8;
+    buf.putLong(index, endActiveTime);
+    index += 8;
+    buf.putLong(index, flowLastSeen);
+    index += 8;
+    buf.putLong(index, forwardLastSeen);
+    index += 8;
+    buf.putLong(index, backwardLastSeen);
+    index += 8;
+    buf.putLong(index, sfLastPacketTS);
+    index += 8;
+    buf.putLong(index, bbulkDuration);
+    index += 8;
+    buf.putLong(index, bbulkPacketCount);
+    index += 8;
+    buf.putLong(index, bbulkSizeTotal);
+    index += 8;
+    buf.putLong(index, bbulkStateCount);
+    index += 8;
+    buf.putLong(index, bbulkPacketCountHelper);
+    index += 8;
+    buf.putLong(index, bbulkStartHelper);
+    index += 8;
+    buf.putLong(index, bbulkSizeHelper);
+    index += 8;
+    buf.putLong(index, blastBulkTS);
+    index += 8;
+    fwdPktStats.writeTo(buf, index);
+    index += OnlineStatistics.BYTES;
+    bwdPktStats.writeTo(buf, index);
+    index += OnlineStatistics.BYTES;
+    flowIAT.writeTo(buf, index);
+    index += OnlineStatistics.BYTES;
+    forwardIAT.writeTo(buf, index);
+    index += OnlineStatistics.BYTES;
+    backwardIAT.writeTo(buf, index);
+    index += OnlineStatistics.BYTES;
+    flowLengthStats.writeTo(buf, index);
+    index += OnlineStatistics.BYTES;
+    flowActive.writeTo(buf, index);
+    index += OnlineStatistics.BYTES;
+    flowIdle.writeTo(buf, index);
+    index += OnlineStatistics.BYTES;
+    buf.putInt(index, forwardCount);
+    index += 4;
+    buf.putInt(index, backwardCount);
+    index += 4;
+    buf.putInt(index, finCount);
+    index += 4;
+    buf.putInt(index, synCount);
+    index += 4;
+    buf.putInt(index, rstCount);
+    index += 4;
+    buf.putInt(index, pshCount);
+    index += 4;
+    buf.putInt(index, ackCount);
+    index += 4;
+    buf.putInt(index, urgCount);
+    index += 4;
+    buf.putInt(index, cwrCount);
+    index += 4;
+    buf.putInt(index, eceCount);
+    index += 4;
+    buf.putInt(index, fPSH_cnt);
+    index += 4;
+    buf.putInt(index, bPSH_cnt);
+    index += 4;
+    buf.putInt(index, fURG_cnt);
+    index += 4;
+    buf.putInt(index, bURG_cnt);
+    index += 4;
+    buf.putInt(index, Init_Win_bytes_forward);
+    index += 4;
+    buf.putInt(index, Init_Win_bytes_backward);
+    index += 4;
+    buf.putInt(index, addressLength);
+    index += 4;
+    buf.putInt(index, srcPort);
+    index += 4;
+    buf.putInt(index, dstPort);
+    index += 4;
+    buf.putInt(index, protocol);
+    index += 4;
+    buf.putInt(index, sfCount);
+  }
 
-    if (rb.containsKey(FlowFeature.src_port.getCvsField())) {
-      dump.append(getSrcPort()).append(ExtractorFeaturesModel.SEPARATOR); // 3
-    }
+  // flowStartTime is the eleventh long of the layout
+  static long readFlowStartTime(ByteBuffer buf, int offset) {
+    return buf.getLong(offset + 80);
+  }
 
-    if (rb.containsKey(FlowFeature.dst_ip.getCvsField())) {
-      dump.append(FormatUtils.ip(dst)).append(ExtractorFeaturesModel.SEPARATOR); // 4
-    }
+  // The flow takes the state read, its Flow ID is built again from the endpoints
+  void readState(ByteBuffer buf, int offset) {
+    int index = offset;
+    forwardBytes = buf.getLong(index);
+    index += 8;
+    backwardBytes = buf.getLong(index);
+    index += 8;
+    fHeaderBytes = buf.getLong(index);
+    index += 8;
+    bHeaderBytes = buf.getLong(index);
+    index += 8;
+    Act_data_pkt_forward = buf.getLong(index);
+    index += 8;
+    min_seg_size_forward = buf.getLong(index);
+    index += 8;
+    srcHigh = buf.getLong(index);
+    index += 8;
+    srcLow = buf.getLong(index);
+    index += 8;
+    dstHigh = buf.getLong(index);
+    index += 8;
+    dstLow = buf.getLong(index);
+    index += 8;
+    flowStartTime = buf.getLong(index);
+    index += 8;
+    startActiveTime = buf.getLong(index);
+    index += 8;
+    endActiveTime = buf.getLong(index);
+    index += 8;
+    flowLastSeen = buf.getLong(index);
+    index += 8;
+    forwardLastSeen = buf.getLong(index);
+    index += 8;
+    backwardLastSeen = buf.getLong(index);
+    index += 8;
+    sfLastPacketTS = buf.getLong(index);
+    index += 8;
+    bbulkDuration = buf.getLong(index);
+    index += 8;
+    bbulkPacketCount = buf.getLong(index);
+    index += 8;
+    bbulkSizeTotal = buf.getLong(index);
+    index += 8;
+    bbulkStateCount = buf.getLong(index);
+    index += 8;
+    bbulkPacketCountHelper = buf.getLong(index);
+    index += 8;
+    bbulkStartHelper = buf.getLong(index);
+    index += 8;
+    bbulkSizeHelper = buf.getLong(index);
+    index += 8;
+    blastBulkTS = buf.getLong(index);
+    index += 8;
+    fwdPktStats.readFrom(buf, index);
+    index += OnlineStatistics.BYTES;
+    bwdPktStats.readFrom(buf, index);
+    index += OnlineStatistics.BYTES;
+    flowIAT.readFrom(buf, index);
+    index += OnlineStatistics.BYTES;
+    forwardIAT.readFrom(buf, index);
+    index += OnlineStatistics.BYTES;
+    backwardIAT.readFrom(buf, index);
+    index += OnlineStatistics.BYTES;
+    flowLengthStats.readFrom(buf, index);
+    index += OnlineStatistics.BYTES;
+    flowActive.readFrom(buf, index);
+    index += OnlineStatistics.BYTES;
+    flowIdle.readFrom(buf, index);
+    index += OnlineStatistics.BYTES;
+    forwardCount = buf.getInt(index);
+    index += 4;
+    backwardCount = buf.getInt(index);
+    index += 4;
+    finCount = buf.getInt(index);
+    index += 4;
+    synCount = buf.getInt(index);
+    index += 4;
+    rstCount = buf.getInt(index);
+    index += 4;
+    pshCount = buf.getInt(index);
+    index += 4;
+    ackCount = buf.getInt(index);
+    index += 4;
+    urgCount = buf.getInt(index);
+    index += 4;
+    cwrCount = buf.getInt(index);
+    index += 4;
+    eceCount = buf.getInt(index);
+    index += 4;
+    fPSH_cnt = buf.getInt(index);
+    index += 4;
+    bPSH_cnt = buf.getInt(index);
+    index += 4;
+    fURG_cnt = buf.getInt(index);
+    index += 4;
+    bURG_cnt = buf.getInt(index);
+    index += 4;
+    Init_Win_bytes_forward = buf.getInt(index);
+    index += 4;
+    Init_Win_bytes_backward = buf.getInt(index);
+    index += 4;
+    addressLength = buf.getInt(index);
+    index += 4;
+    srcPort = buf.getInt(index);
+    index += 4;
+    dstPort = buf.getInt(index);
+    index += 4;
+    protocol = buf.getInt(index);
+    index += 4;
+    sfCount = buf.getInt(index);
+    flowId = null;
+  }
 
-    if (rb.containsKey(FlowFeature.dst_ip.getCvsField())) {
-      dump.append(FormatUtils.ip(dst)).append(ExtractorFeaturesModel.SEPARATOR); // 4
-    }
+  public String dumpFlowBasedFeaturesEx(ResourceBundle rb) {
+    RowBuilder row = new RowBuilder();
+    writeFeatures(ColumnPlan.of(rb), row);
+    return row.toString();
+  }
 
-    if (rb.containsKey(FlowFeature.dst_pot.getCvsField())) {
-      dump.append(getDstPort()).append(ExtractorFeaturesModel.SEPARATOR); // 5
-    }
-    if (rb.containsKey(FlowFeature.prot.getCvsField())) {
-      dump.append(getProtocol()).append(ExtractorFeaturesModel.SEPARATOR); // 6
-    }
-    String starttime =
-            Utility.convertMilliseconds2String(flowStartTime / 1000L, "dd/MM/yyyy hh:mm:ss a");
-    if (rb.containsKey(FlowFeature.tstp.getCvsField())) {
-      dump.append(starttime).append(ExtractorFeaturesModel.SEPARATOR); // 7
-    }
+  public void writeFeatures(ColumnPlan plan, FeatureWriter writer) {
     long flowDuration = flowLastSeen - flowStartTime;
-    if (rb.containsKey(FlowFeature.fl_dur.getCvsField())) {
-      dump.append(flowDuration).append(ExtractorFeaturesModel.SEPARATOR); // 8
-    }
-
-    if (rb.containsKey(FlowFeature.tot_fw_pkt.getCvsField())) {
-      dump.append(fwdPktStats.getN()).append(ExtractorFeaturesModel.SEPARATOR); // 9
-    }
-
-    if (rb.containsKey(FlowFeature.tot_bw_pkt.getCvsField())) {
-      dump.append(bwdPktStats.getN()).append(ExtractorFeaturesModel.SEPARATOR); // 10
-    }
-
-    if (rb.containsKey(FlowFeature.tot_l_fw_pkt.getCvsField())) {
-      dump.append(fwdPktStats.getSum()).append(ExtractorFeaturesModel.SEPARATOR); // 11
-    }
-
-    if (rb.containsKey(FlowFeature.tot_l_bw_pkt.getCvsField())) {
-      dump.append(bwdPktStats.getSum()).append(ExtractorFeaturesModel.SEPARATOR); // 12
-    }
-
-    if (fwdPktStats.getN() > 0L) {
-      if (rb.containsKey(FlowFeature.fw_pkt_l_max.getCvsField())) {
-        dump.append(fwdPktStats.getMax()).append(ExtractorFeaturesModel.SEPARATOR); // 13
-      }
-      if (rb.containsKey(FlowFeature.fw_pkt_l_min.getCvsField())) {
-        dump.append(fwdPktStats.getMin()).append(ExtractorFeaturesModel.SEPARATOR); // 14
-      }
-      if (rb.containsKey(FlowFeature.fw_pkt_l_avg.getCvsField())) {
-        dump.append(fwdPktStats.getMean()).append(ExtractorFeaturesModel.SEPARATOR); // 15
-      }
-      if (rb.containsKey(FlowFeature.fw_pkt_l_std.getCvsField())) {
-        dump.append(fwdPktStats.getStandardDeviation()).append(ExtractorFeaturesModel.SEPARATOR); // 16
-      }
-    } else {
-      if (rb.containsKey(FlowFeature.fw_pkt_l_max.getCvsField())) {
-        dump.append(0).append(ExtractorFeaturesModel.SEPARATOR); // 13
-      }
-      if (rb.containsKey(FlowFeature.fw_pkt_l_min.getCvsField())) {
-        dump.append(0).append(ExtractorFeaturesModel.SEPARATOR); // 14
-      }
-      if (rb.containsKey(FlowFeature.fw_pkt_l_avg.getCvsField())) {
-        dump.append(0).append(ExtractorFeaturesModel.SEPARATOR); // 15
-      }
-      if (rb.containsKey(FlowFeature.fw_pkt_l_std.getCvsField())) {
-        dump.append(0).append(ExtractorFeaturesModel.SEPARATOR); // 16
-      }
-    }
-    if (bwdPktStats.getN() > 0L) {
-      if (rb.containsKey(FlowFeature.bw_pkt_l_max.getCvsField())) {
-        dump.append(fwdPktStats.getMax()).append(ExtractorFeaturesModel.SEPARATOR); // 17
-      }
-      if (rb.containsKey(FlowFeature.bw_pkt_l_min.getCvsField())) {
-        dump.append(fwdPktStats.getMin()).append(ExtractorFeaturesModel.SEPARATOR); // 18
-      }
-      if (rb.containsKey(FlowFeature.bw_pkt_l_avg.getCvsField())) {
-        dump.append(fwdPktStats.getMean()).append(ExtractorFeaturesModel.SEPARATOR); // 19
-      }
-      if (rb.containsKey(FlowFeature.bw_pkt_l_std.getCvsField())) {
-        dump.append(fwdPktStats.getStandardDeviation()).append(ExtractorFeaturesModel.SEPARATOR); // 20
-      }
-    } else {
-      if (rb.containsKey(FlowFeature.bw_pkt_l_max.getCvsField())) {
-        dump.append(0).append(ExtractorFeaturesModel.SEPARATOR); // 17
-      }
-      if (rb.containsKey(FlowFeature.bw_pkt_l_min.getCvsField())) {
-        dump.append(0).append(ExtractorFeaturesModel.SEPARATOR); // 18
-      }
-      if (rb.containsKey(FlowFeature.bw_pkt_l_avg.getCvsField())) {
-        dump.append(0).append(ExtractorFeaturesModel.SEPARATOR); // 19
-      }
-      if (rb.containsKey(FlowFeature.bw_pkt_l_std.getCvsField())) {
-        dump.append(0).append(ExtractorFeaturesModel.SEPARATOR); // 20
-      }
-    }
-
-    if (rb.containsKey(FlowFeature.fl_byt_s.getCvsField())) {
-      dump.append(((double) (forwardBytes + backwardBytes)) / ((double) flowDuration / 1000000L))
-              .append(ExtractorFeaturesModel.SEPARATOR); // 21
-    }
-
-    if (rb.containsKey(FlowFeature.fl_pkt_s.getCvsField())) {
-      dump.append(((double) packetCount()) / ((double) flowDuration / 1000000L))
-              .append(ExtractorFeaturesModel.SEPARATOR); // 22
-    }
-    if (rb.containsKey(FlowFeature.fl_iat_avg.getCvsField())) {
-      dump.append(flowIAT.getMean()).append(ExtractorFeaturesModel.SEPARATOR); // 23
-    }
-    if (rb.containsKey(FlowFeature.fl_iat_std.getCvsField())) {
-      dump.append(flowIAT.getStandardDeviation()).append(ExtractorFeaturesModel.SEPARATOR); // 24
-    }
-    if (rb.containsKey(FlowFeature.fl_iat_max.getCvsField())) {
-      dump.append(flowIAT.getMax()).append(ExtractorFeaturesModel.SEPARATOR); // 25
-    }
-    if (rb.containsKey(FlowFeature.fl_iat_min.getCvsField())) {
-      dump.append(flowIAT.getMin()).append(ExtractorFeaturesModel.SEPARATOR); // 26
-    }
-    if (this.forward.size() > 1) {
-      if (rb.containsKey(FlowFeature.fw_iat_tot.getCvsField())) {
-        dump.append(forwardIAT.getSum()).append(ExtractorFeaturesModel.SEPARATOR); // 27
-      }
-      if (rb.containsKey(FlowFeature.fw_iat_avg.getCvsField())) {
-        dump.append(forwardIAT.getMean()).append(ExtractorFeaturesModel.SEPARATOR); // 28
-      }
-      if (rb.containsKey(FlowFeature.fw_iat_std.getCvsField())) {
-        dump.append(forwardIAT.getStandardDeviation()).append(ExtractorFeaturesModel.SEPARATOR); // 29
-      }
-      if (rb.containsKey(FlowFeature.fw_iat_max.getCvsField())) {
-        dump.append(forwardIAT.getMax()).append(ExtractorFeaturesModel.SEPARATOR); // 30
-      }
-      if (rb.containsKey(FlowFeature.fw_iat_min.getCvsField())) {
-        dump.append(forwardIAT.getMin()).append(ExtractorFeaturesModel.SEPARATOR); // 31
-      }
-    } else {
-      if (rb.containsKey(FlowFeature.fw_iat_tot.getCvsField())) {
-        dump.append(0).append(ExtractorFeaturesModel.SEPARATOR); // 27
-      }
-      if (rb.containsKey(FlowFeature.fw_iat_avg.getCvsField())) {
-        dump.append(0).append(ExtractorFeaturesModel.SEPARATOR); // 28
-      }
-      if (rb.containsKey(FlowFeature.fw_iat_std.getCvsField())) {
-        dump.append(0).append(ExtractorFeaturesModel.SEPARATOR); // 29
-      }
-      if (rb.containsKey(FlowFeature.fw_iat_max.getCvsField())) {
-        dump.append(0).append(ExtractorFeaturesModel.SEPARATOR); // 30
-      }
-      if (rb.containsKey(FlowFeature.fw_iat_min.getCvsField())) {
-        dump.append(0).append(ExtractorFeaturesModel.SEPARATOR); // 31
-      }
-    }
-    if (this.backward.size() > 1) {
-      if (rb.containsKey(FlowFeature.bw_iat_tot.getCvsField())) {
-        dump.append(backwardIAT.getSum()).append(ExtractorFeaturesModel.SEPARATOR); // 32
-      }
-      if (rb.containsKey(FlowFeature.bw_iat_avg.getCvsField())) {
-        dump.append(backwardIAT.getMean()).append(ExtractorFeaturesModel.SEPARATOR); // 33
-      }
-      if (rb.containsKey(FlowFeature.bw_iat_std.getCvsField())) {
-        dump.append(backwardIAT.getStandardDeviation()).append(ExtractorFeaturesModel.SEPARATOR); // 34
-      }
-      if (rb.containsKey(FlowFeature.bw_iat_max.getCvsField())) {
-        dump.append(backwardIAT.getMax()).append(ExtractorFeaturesModel.SEPARATOR); // 35
-      }
-      if (rb.containsKey(FlowFeature.bw_iat_min.getCvsField())) {
-        dump.append(backwardIAT.getMin()).append(ExtractorFeaturesModel.SEPARATOR); // 36
-      }
-    } else {
-      if (rb.containsKey(FlowFeature.bw_iat_tot.getCvsField())) {
-        dump.append(0).append(ExtractorFeaturesModel.SEPARATOR); // 32
-      }
-      if (rb.containsKey(FlowFeature.bw_iat_avg.getCvsField())) {
-        dump.append(0).append(ExtractorFeaturesModel.SEPARATOR); // 33
-      }
-      if (rb.containsKey(FlowFeature.bw_iat_std.getCvsField())) {
-        dump.append(0).append(ExtractorFeaturesModel.SEPARATOR); // 34
-      }
-      if (rb.containsKey(FlowFeature.bw_iat_max.getCvsField())) {
-        dump.append(0).append(ExtractorFeaturesModel.SEPARATOR); // 35
-      }
-      if (rb.containsKey(FlowFeature.bw_iat_min.getCvsField())) {
-        dump.append(0).append(ExtractorFeaturesModel.SEPARATOR); // 36
-      }
-    }
-    if (rb.containsKey(FlowFeature.fw_psh_flag.getCvsField())) {
-      dump.append(fPSH_cnt).append(ExtractorFeaturesModel.SEPARATOR); // 37
-    }
-    if (rb.containsKey(FlowFeature.bw_psh_flag.getCvsField())) {
-      dump.append(bPSH_cnt).append(ExtractorFeaturesModel.SEPARATOR); // 38
-    }
-    if (rb.containsKey(FlowFeature.fw_urg_flag.getCvsField())) {
-      dump.append(fURG_cnt).append(ExtractorFeaturesModel.SEPARATOR); // 39
-    }
-    if (rb.containsKey(FlowFeature.bw_urg_flag.getCvsField())) {
-      dump.append(bURG_cnt).append(ExtractorFeaturesModel.SEPARATOR); // 40
-    }
-    if (rb.containsKey(FlowFeature.fw_hdr_len.getCvsField())) {
-      dump.append(fHeaderBytes).append(ExtractorFeaturesModel.SEPARATOR); // 41
-    }
-    if (rb.containsKey(FlowFeature.bw_hdr_len.getCvsField())) {
-      dump.append(bHeaderBytes).append(ExtractorFeaturesModel.SEPARATOR); // 42
-    }
-    if (rb.containsKey(FlowFeature.fw_pkt_s.getCvsField())) {
-      dump.append(getfPktsPerSecond()).append(ExtractorFeaturesModel.SEPARATOR); // 43
-    }
-    if (rb.containsKey(FlowFeature.bw_pkt_s.getCvsField())) {
-      dump.append(getbPktsPerSecond()).append(ExtractorFeaturesModel.SEPARATOR); // 44
-    }
-
-    if (this.forward.size() > 0 || this.backward.size() > 0) {
-      if (rb.containsKey(FlowFeature.pkt_len_min.getCvsField())) {
-        dump.append(flowLengthStats.getMin()).append(ExtractorFeaturesModel.SEPARATOR); // 45
-      }
-      if (rb.containsKey(FlowFeature.pkt_len_max.getCvsField())) {
-        dump.append(flowLengthStats.getMax()).append(ExtractorFeaturesModel.SEPARATOR); // 46
-      }
-      if (rb.containsKey(FlowFeature.pkt_len_avg.getCvsField())) {
-        dump.append(flowLengthStats.getMean()).append(ExtractorFeaturesModel.SEPARATOR); // 47
-      }
-      if (rb.containsKey(FlowFeature.pkt_len_std.getCvsField())) {
-        dump.append(flowLengthStats.getStandardDeviation()).append(ExtractorFeaturesModel.SEPARATOR); // 48
-      }
-      if (rb.containsKey(FlowFeature.pkt_len_var.getCvsField())) {
-        dump.append(flowLengthStats.getVariance()).append(ExtractorFeaturesModel.SEPARATOR); // 49
-      }
-    } else {
-      if (rb.containsKey(FlowFeature.pkt_len_min.getCvsField())) {
-        dump.append(0).append(ExtractorFeaturesModel.SEPARATOR); // 45
-      }
-      if (rb.containsKey(FlowFeature.pkt_len_max.getCvsField())) {
-        dump.append(0).append(ExtractorFeaturesModel.SEPARATOR); // 46
-      }
-      if (rb.containsKey(FlowFeature.pkt_len_avg.getCvsField())) {
-        dump.append(0).append(ExtractorFeaturesModel.SEPARATOR); // 47
-      }
-      if (rb.containsKey(FlowFeature.pkt_len_std.getCvsField())) {
-        dump.append(0).append(ExtractorFeaturesModel.SEPARATOR); // 48
-      }
-      if (rb.containsKey(FlowFeature.pkt_len_var.getCvsField())) {
-        dump.append(0).append(ExtractorFeaturesModel.SEPARATOR); // 49
-      }
-    }
-
-    if (rb.containsKey(FlowFeature.fin_cnt.getCvsField())) {
-      dump.append(flagCounts.get("FIN").value).append(ExtractorFeaturesModel.SEPARATOR); // 50
-    }
-    if (rb.containsKey(FlowFeature.syn_cnt.getCvsField())) {
-      dump.append(flagCounts.get("SYN").value).append(ExtractorFeaturesModel.SEPARATOR); // 51
-    }
-    if (rb.containsKey(FlowFeature.rst_cnt.getCvsField())) {
-      dump.append(flagCounts.get("RST").value).append(ExtractorFeaturesModel.SEPARATOR); // 52
-    }
-    if (rb.containsKey(FlowFeature.pst_cnt.getCvsField())) {
-      dump.append(flagCounts.get("PSH").value).append(ExtractorFeaturesModel.SEPARATOR); // 53
-    }
-    if (rb.containsKey(FlowFeature.ack_cnt.getCvsField())) {
-      dump.append(flagCounts.get("ACK").value).append(ExtractorFeaturesModel.SEPARATOR); // 54
-    }
-    if (rb.containsKey(FlowFeature.urg_cnt.getCvsField())) {
-      dump.append(flagCounts.get("URG").value).append(ExtractorFeaturesModel.SEPARATOR); // 55
-    }
-    if (rb.containsKey(FlowFeature.cwr_cnt.getCvsField())) {
-      dump.append(flagCounts.get("CWR").value).append(ExtractorFeaturesModel.SEPARATOR); // 56
-    }
-    if (rb.containsKey(FlowFeature.ece_cnt.getCvsField())) {
-      dump.append(flagCounts.get("ECE").value).append(ExtractorFeaturesModel.SEPARATOR); // 57
-    }
-    if (rb.containsKey(FlowFeature.down_up_ratio.getCvsField())) {
-      dump.append(getDownUpRatio()).append(ExtractorFeaturesModel.SEPARATOR); // 58
-    }
-    if (rb.containsKey(FlowFeature.pkt_size_avg.getCvsField())) {
-      dump.append(getAvgPacketSize()).append(ExtractorFeaturesModel.SEPARATOR); // 59
-    }
-    if (rb.containsKey(FlowFeature.fw_seg_avg.getCvsField())) {
-      dump.append(fAvgSegmentSize()).append(ExtractorFeaturesModel.SEPARATOR); // 60
-    }
-    if (rb.containsKey(FlowFeature.bw_seg_avg.getCvsField())) {
-      dump.append(bAvgSegmentSize()).append(ExtractorFeaturesModel.SEPARATOR); // 61
-    }
-    if (rb.containsKey(FlowFeature.fw_byt_blk_avg.getCvsField())) {
-      dump.append(fAvgBytesPerBulk()).append(ExtractorFeaturesModel.SEPARATOR); // 63
-    }
-    if (rb.containsKey(FlowFeature.fw_pkt_blk_avg.getCvsField())) {
-      dump.append(fAvgPacketsPerBulk()).append(ExtractorFeaturesModel.SEPARATOR); // 64
-    }
-    if (rb.containsKey(FlowFeature.fw_blk_rate_avg.getCvsField())) {
-      dump.append(fAvgBulkRate()).append(ExtractorFeaturesModel.SEPARATOR); // 65
-    }
-    if (rb.containsKey(FlowFeature.bw_byt_blk_avg.getCvsField())) {
-      dump.append(fAvgBytesPerBulk()).append(ExtractorFeaturesModel.SEPARATOR); // 66
-    }
-    if (rb.containsKey(FlowFeature.bw_pkt_blk_avg.getCvsField())) {
-      dump.append(bAvgPacketsPerBulk()).append(ExtractorFeaturesModel.SEPARATOR); // 67
-    }
-    if (rb.containsKey(FlowFeature.bw_blk_rate_avg.getCvsField())) {
-      dump.append(bAvgBulkRate()).append(ExtractorFeaturesModel.SEPARATOR); // 68
-    }
-    if (rb.containsKey(FlowFeature.subfl_fw_pkt.getCvsField())) {
-      dump.append(getSflow_fpackets()).append(ExtractorFeaturesModel.SEPARATOR); // 69
-    }
-    if (rb.containsKey(FlowFeature.subfl_fw_byt.getCvsField())) {
-      dump.append(getSflow_fbytes()).append(ExtractorFeaturesModel.SEPARATOR); // 70
-    }
-    if (rb.containsKey(FlowFeature.subfl_bw_pkt.getCvsField())) {
-      dump.append(getSflow_bpackets()).append(ExtractorFeaturesModel.SEPARATOR); // 71
-    }
-    if (rb.containsKey(FlowFeature.subfl_bw_byt.getCvsField())) {
-      dump.append(getSflow_bbytes()).append(ExtractorFeaturesModel.SEPARATOR); // 72
-    }
-    if (rb.containsKey(FlowFeature.fw_win_byt.getCvsField())) {
-      dump.append(Init_Win_bytes_forward).append(ExtractorFeaturesModel.SEPARATOR); // 73
-    }
-    if (rb.containsKey(FlowFeature.bw_win_byt.getCvsField())) {
-      dump.append(Init_Win_bytes_backward).append(ExtractorFeaturesModel.SEPARATOR); // 74
-    }
-    if (rb.containsKey(FlowFeature.Fw_act_pkt.getCvsField())) {
-      dump.append(Act_data_pkt_forward).append(ExtractorFeaturesModel.SEPARATOR); // 75
-    }
-    if (rb.containsKey(FlowFeature.fw_seg_min.getCvsField())) {
-      dump.append(min_seg_size_forward).append(ExtractorFeaturesModel.SEPARATOR); // 76
-    }
-    if (this.flowActive.getN() > 0) {
-      if (rb.containsKey(FlowFeature.atv_avg.getCvsField())) {
-        dump.append(flowActive.getMean()).append(ExtractorFeaturesModel.SEPARATOR); // 77
-      }
-      if (rb.containsKey(FlowFeature.atv_std.getCvsField())) {
-        dump.append(flowActive.getStandardDeviation()).append(ExtractorFeaturesModel.SEPARATOR); // 78
-      }
-      if (rb.containsKey(FlowFeature.atv_max.getCvsField())) {
-        dump.append(flowActive.getMax()).append(ExtractorFeaturesModel.SEPARATOR); // 79
-      }
-      if (rb.containsKey(FlowFeature.atv_min.getCvsField())) {
-        dump.append(flowActive.getMin()).append(ExtractorFeaturesModel.SEPARATOR); // 80
-      }
-    } else {
-      if (rb.containsKey(FlowFeature.atv_avg.getCvsField())) {
-        dump.append(0).append(ExtractorFeaturesModel.SEPARATOR); // 77
-      }
-      if (rb.containsKey(FlowFeature.atv_std.getCvsField())) {
-        dump.append(0).append(ExtractorFeaturesModel.SEPARATOR); // 78
-      }
-      if (rb.containsKey(FlowFeature.atv_max.getCvsField())) {
-        dump.append(0).append(ExtractorFeaturesModel.SEPARATOR); // 79
-      }
-      if (rb.containsKey(FlowFeature.atv_min.getCvsField())) {
-        dump.append(0).append(ExtractorFeaturesModel.SEPARATOR); // 80
-      }
+    for (int i = 0; i < plan.size(); i++) {
+      writeFeature(plan.getFeature(i), writer, flowDuration);
     }
+  }
 
-    if (this.flowIdle.getN() > 0) {
-      if (rb.containsKey(FlowFeature.idl_avg.getCvsField())) {
-        dump.append(flowIdle.getMean()).append(ExtractorFeaturesModel.SEPARATOR); // 81
-      }
-      if (rb.containsKey(FlowFeature.idl_std.getCvsField())) {
-        dump.append(flowIdle.getStandardDeviation()).append(ExtractorFeaturesModel.SEPARATOR); // 82
-      }
-      if (rb.containsKey(FlowFeature.idl_max.getCvsField())) {
-        dump.append(flowIdle.getMax()).append(ExtractorFeaturesModel.SEPARATOR); // 83
-      }
-      if (rb.containsKey(FlowFeature.idl_min.getCvsField())) {
-        dump.append(flowIdle.getMin()).append(ExtractorFeaturesModel.SEPARATOR); // 84
-      }
-    } else {
-      if (rb.containsKey(FlowFeature.idl_avg.getCvsField())) {
-        dump.append(0).append(ExtractorFeaturesModel.SEPARATOR); // 81
-      }
-      if (rb.containsKey(FlowFeature.idl_std.getCvsField())) {
-        dump.append(0).append(ExtractorFeaturesModel.SEPARATOR); // 82
-      }
-      if (rb.containsKey(FlowFeature.idl_max.getCvsField())) {
-        dump.append(0).append(ExtractorFeaturesModel.SEPARATOR); // 83
-      }
-      if (rb.containsKey(FlowFeature.idl_min.getCvsField())) {
-        dump.append(0).append(ExtractorFeaturesModel.SEPARATOR); // 84
-      }
-    }
-    if (rb.containsKey(FlowFeature.Label.getCvsField())) {
-      dump.append("label"); // -> final CVS value (attack or benign) 85
+  // The lengths, IAT, active and idle statistics are written as 0 while they have no value
+  private void writeFeature(FlowFeature feature, FeatureWriter writer, long flowDuration) {
+    switch (feature) {
+      case fid:
+        writer.writeString(getFlowId());
+        break;
+      case src_ip:
+        writer.writeAddress(srcHigh, srcLow, addressLength);
+        break;
+      case src_port:
+        writer.writeLong(getSrcPort());
+        break;
+      case dst_ip:
+        writer.writeAddress(dstHigh, dstLow, addressLength);
+        break;
+      case dst_pot:
+        writer.writeLong(getDstPort());
+        break;
+      case prot:
+        writer.writeLong(getProtocol());
+        break;
+      case tstp:
+        writer.writeTimestamp(flowStartTime / 1000L);
+        break;
+      case fl_dur:
+        writer.writeLong(flowDuration);
+        break;
+      case tot_fw_pkt:
+        writer.writeLong(fwdPktStats.getN());
+        break;
+      case tot_bw_pkt:
+        writer.writeLong(bwdPktStats.getN());
+        break;
+      case tot_l_fw_pkt:
+        writer.writeDouble(fwdPktStats.getSum());
+        break;
+      case tot_l_bw_pkt:
+        writer.writeDouble(bwdPktStats.getSum());
+        break;
+      case fw_pkt_l_max:
+        writeStatistic(writer, fwdPktStats.getN() > 0L, fwdPktStats.getMax());
+        break;
+      case fw_pkt_l_min:
+        writeStatistic(writer, fwdPktStats.getN() > 0L, fwdPktStats.getMin());
+        break;
+      case fw_pkt_l_avg:
+        writeStatistic(writer, fwdPktStats.getN() > 0L, fwdPktStats.getMean());
+        break;
+      case fw_pkt_l_std:
+        writeStatistic(writer, fwdPktStats.getN() > 0L, fwdPktStats.getStandardDeviation());
+        break;
+      // the backward lengths have always been read from the forward statistics
+      case bw_pkt_l_max:
+        writeStatistic(writer, bwdPktStats.getN() > 0L, fwdPktStats.getMax());
+        break;
+      case bw_pkt_l_min:
+        writeStatistic(writer, bwdPktStats.getN() > 0L, fwdPktStats.getMin());
+        break;
+      case bw_pkt_l_avg:
+        writeStatistic(writer, bwdPktStats.getN() > 0L, fwdPktStats.getMean());
+        break;
+      case bw_pkt_l_std:
+        writeStatistic(writer, bwdPktStats.getN() > 0L, fwdPktStats.getStandardDeviation());
+        break;
+      case fl_byt_s:
+        writer.writeDouble(
+                ((double) (forwardBytes + backwardBytes)) / ((double) flowDuration / 1000000L));
+        break;
+      case fl_pkt_s:
+        writer.writeDouble(((double) packetCount()) / ((double) flowDuration / 1000000L));
+        break;
+      case fl_iat_avg:
+        writer.writeDouble(flowIAT.getMean());
+        break;
+      case fl_iat_std:
+        writer.writeDouble(flowIAT.getStandardDeviation());
+        break;
+      case fl_iat_max:
+        writer.writeDouble(flowIAT.getMax());
+        break;
+      case fl_iat_min:
+        writer.writeDouble(flowIAT.getMin());
+        break;
+      case fw_iat_tot:
+        writeStatistic(writer, forwardCount > 1, forwardIAT.getSum());
+        break;
+      case fw_iat_avg:
+        writeStatistic(writer, forwardCount > 1, forwardIAT.getMean());
+        break;
+      case fw_iat_std:
+        writeStatistic(writer, forwardCount > 1, forwardIAT.getStandardDeviation());
+        break;
+      case fw_iat_max:
+        writeStatistic(writer, forwardCount > 1, forwardIAT.getMax());
+        break;
+      case fw_iat_min:
+        writeStatistic(writer, forwardCount > 1, forwardIAT.getMin());
+        break;
+      case bw_iat_tot:
+        writeStatistic(writer, backwardCount > 1, backwardIAT.getSum());
+        break;
+      case bw_iat_avg:
+        writeStatistic(writer, backwardCount > 1, backwardIAT.getMean());
+        break;
+      case bw_iat_std:
+        writeStatistic(writer, backwardCount > 1, backwardIAT.getStandardDeviation());
+        break;
+      case bw_iat_max:
+        writeStatistic(writer, backwardCount > 1, backwardIAT.getMax());
+        break;
+      case bw_iat_min:
+        writeStatistic(writer, backwardCount > 1, backwardIAT.getMin());
+        break;
+      case fw_psh_flag:
+        writer.writeLong(fPSH_cnt);
+        break;
+      case bw_psh_flag:
+        writer.writeLong(bPSH_cnt);
+        break;
+      case fw_urg_flag:
+        writer.writeLong(fURG_cnt);
+        break;
+      case bw_urg_flag:
+        writer.writeLong(bURG_cnt);
+        break;
+      case fw_hdr_len:
+        writer.writeLong(fHeaderBytes);
+        break;
+      case bw_hdr_len:
+        writer.writeLong(bHeaderBytes);
+        break;
+      case fw_pkt_s:
+        writer.writeDouble(getfPktsPerSecond());
+        break;
+      case bw_pkt_s:
+        writer.writeDouble(getbPktsPerSecond());
+        break;
+      case pkt_len_min:
+        writeStatistic(writer, packetsSeen(), flowLengthStats.getMin());
+        break;
+      case pkt_len_max:
+        writeStatistic(writer, packetsSeen(), flowLengthStats.getMax());
+        break;
+      case pkt_len_avg:
+        writeStatistic(writer, packetsSeen(), flowLengthStats.getMean());
+        break;
+      case pkt_len_std:
+        writeStatistic(writer, packetsSeen(), flowLengthStats.getStandardDeviation());
+        break;
+      case pkt_len_var:
+        writeStatistic(writer, packetsSeen(), flowLengthStats.getVariance());
+        break;
+      case fin_cnt:
+        writer.writeLong(finCount);
+        break;
+      case syn_cnt:
+        writer.writeLong(synCount);
+        break;
+      case rst_cnt:
+        writer.writeLong(rstCount);
+        break;
+      case pst_cnt:
+        writer.writeLong(pshCount);
+        break;
+      case ack_cnt:
+        writer.writeLong(ackCount);
+        break;
+      case urg_cnt:
+        writer.writeLong(urgCount);
+        break;
+      case cwr_cnt:
+        writer.writeLong(cwrCount);
+        break;
+      case ece_cnt:
+        writer.writeLong(eceCount);
+        break;
+      case down_up_ratio:
+        writer.writeDouble(getDownUpRatio());
+        break;
+      case pkt_size_avg:
+        writer.writeDouble(getAvgPacketSize());
+        break;
+      case fw_seg_avg:
+        writer.writeDouble(fAvgSegmentSize());
+        break;
+      case bw_seg_avg:
+        writer.writeDouble(bAvgSegmentSize());
+        break;
+      case fw_byt_blk_avg:
+        writer.writeLong(fAvgBytesPerBulk());
+        break;
+      case fw_pkt_blk_avg:
+        writer.writeLong(fAvgPacketsPerBulk());
+        break;
+      case fw_blk_rate_avg:
+        writer.writeLong(fAvgBulkRate());
+        break;
+      // written from the forward bulks since the first version of the extractor
+      case bw_byt_blk_avg:
+        writer.writeLong(fAvgBytesPerBulk());
+        break;
+      case bw_pkt_blk_avg:
+        writer.writeLong(bAvgPacketsPerBulk());
+        break;
+      case bw_blk_rate_avg:
+        writer.writeLong(bAvgBulkRate());
+        break;
+      case subfl_fw_pkt:
+        writer.writeLong(getSflow_fpackets());
+        break;
+      case subfl_fw_byt:
+        writer.writeLong(getSflow_fbytes());
+        break;
+      case subfl_bw_pkt:
+        writer.writeLong(getSflow_bpackets());
+        break;
+      case subfl_bw_byt:
+        writer.writeLong(getSflow_bbytes());
+        break;
+      case fw_win_byt:
+        writer.writeLong(Init_Win_bytes_forward);
+        break;
+      case bw_win_byt:
+        writer.writeLong(Init_Win_bytes_backward);
+        break;
+      case Fw_act_pkt:
+        writer.writeLong(Act_data_pkt_forward);
+        break;
+      case fw_seg_min:
+        writer.writeLong(min_seg_size_forward);
+        break;
+      case atv_avg:
+        writeStatistic(writer, flowActive.getN() > 0, flowActive.getMean());
+        break;
+      case atv_std:
+        writeStatistic(writer, flowActive.getN() > 0, flowActive.getStandardDeviation());
+        break;
+      case atv_max:
+        writeStatistic(writer, flowActive.getN() > 0, flowActive.getMax());
+        break;
+      case atv_min:
+        writeStatistic(writer, flowActive.getN() > 0, flowActive.getMin());
+        break;
+      case idl_avg:
+        writeStatistic(writer, flowIdle.getN() > 0, flowIdle.getMean());
+        break;
+      case idl_std:
+        writeStatistic(writer, flowIdle.getN() > 0, flowIdle.getStandardDeviation());
+        break;
+      case idl_max:
+        writeStatistic(writer, flowIdle.getN() > 0, flowIdle.getMax());
+        break;
+      case idl_min:
+        writeStatistic(writer, flowIdle.getN() > 0, flowIdle.getMin());
+        break;
+      case Label:
+        writer.writeString("label"); // -> final CVS value (attack or benign)
+        break;
+      default:
+        break;
     }
-    return dump.toString();
   }
-}
-
-class MutableInt {
-  int value = 0;
 
-  public void increment() {
-    ++value;
+  private boolean packetsSeen() {
+    return this.forwardCount > 0 || this.backwardCount > 0;
   }
 
-  public int get() {
-    return value;
+  private static void writeStatistic(FeatureWriter writer, boolean available, double value) {
+    if (available) {
+      writer.writeDouble(value);
+    } else {
+      writer.writeLong(0);
+    }
   }
 }
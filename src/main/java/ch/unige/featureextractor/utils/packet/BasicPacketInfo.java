@@ -20,15 +20,17 @@ package ch.unige.featureextractor.utils.packet;
 
 import org.jnetpcap.packet.format.FormatUtils;
 
-import java.util.Arrays;
-
 public class BasicPacketInfo {
     private long id;
     private String flowId = null;
 
     /*  Basic Info to generate flows from packets  	*/
-    private byte[] src;
-    private byte[] dst;
+    // addresses are kept as primitives (IPv4 in the low 32 bits) so a reused view does not allocate
+    private long srcHigh;
+    private long srcLow;
+    private long dstHigh;
+    private long dstLow;
+    private int addressLength;
     private int srcPort;
     private int dstPort;
     private int protocol;
@@ -49,24 +51,179 @@ public class BasicPacketInfo {
     public BasicPacketInfo() {
     }
 
+    public void copyFrom(BasicPacketInfo other) {
+        flowId = other.flowId;
+        srcHigh = other.srcHigh;
+        srcLow = other.srcLow;
+        dstHigh = other.dstHigh;
+        dstLow = other.dstLow;
+        addressLength = other.addressLength;
+        srcPort = other.srcPort;
+        dstPort = other.dstPort;
+        protocol = other.protocol;
+        timeStamp = other.timeStamp;
+        payloadBytes = other.payloadBytes;
+        flagFIN = other.flagFIN;
+        flagPSH = other.flagPSH;
+        flagURG = other.flagURG;
+        flagECE = other.flagECE;
+        flagSYN = other.flagSYN;
+        flagACK = other.flagACK;
+        flagCWR = other.flagCWR;
+        flagRST = other.flagRST;
+        TCPWindow = other.TCPWindow;
+        headerBytes = other.headerBytes;
+        payloadPacket = other.payloadPacket;
+    }
+
+    // Same value for both directions of a flow, used to partition packets among flow tables
+    public int canonicalFlowHash() {
+        long src = (srcHigh * 0x9E3779B97F4A7C15L) ^ (srcLow * 0xC2B2AE3D27D4EB4FL) ^ srcPort;
+        long dst = (dstHigh * 0x9E3779B97F4A7C15L) ^ (dstLow * 0xC2B2AE3D27D4EB4FL) ^ dstPort;
+        long hash = (Math.min(src, dst) * 31L + Math.max(src, dst)) * 31L + protocol;
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        return (int) hash;
+    }
+
+    // Clears the view before a reader fills it again with the next packet
+    public void reset() {
+        flowId = null;
+        srcHigh = 0L;
+        srcLow = 0L;
+        dstHigh = 0L;
+        dstLow = 0L;
+        addressLength = 0;
+        srcPort = 0;
+        dstPort = 0;
+        protocol = 0;
+        timeStamp = 0L;
+        payloadBytes = 0L;
+        flagFIN = false;
+        flagPSH = false;
+        flagURG = false;
+        flagECE = false;
+        flagSYN = false;
+        flagACK = false;
+        flagCWR = false;
+        flagRST = false;
+        TCPWindow = 0;
+        headerBytes = 0L;
+        payloadPacket = 0;
+    }
+
     public int getPayloadPacket() {
         return payloadPacket += 1;
     }
 
     public byte[] getSrc() {
-        return Arrays.copyOf(src, src.length);
+        return toBytes(srcHigh, srcLow, addressLength);
     }
 
     public void setSrc(byte[] src) {
-        this.src = src;
+        this.addressLength = src.length;
+        this.srcHigh = highWord(src);
+        this.srcLow = lowWord(src);
+    }
+
+    public void setSrc(long high, long low, int length) {
+        this.addressLength = length;
+        this.srcHigh = high;
+        this.srcLow = low;
     }
 
     public byte[] getDst() {
-        return Arrays.copyOf(dst, dst.length);
+        return toBytes(dstHigh, dstLow, addressLength);
     }
 
     public void setDst(byte[] dst) {
-        this.dst = dst;
+        this.addressLength = dst.length;
+        this.dstHigh = highWord(dst);
+        this.dstLow = lowWord(dst);
+    }
+
+    public void setDst(long high, long low, int length) {
+        this.addressLength = length;
+        this.dstHigh = high;
+        this.dstLow = low;
+    }
+
+    public boolean hasSrc(byte[] address) {
+        if (address == null || address.length != addressLength) {
+            return false;
+        }
+        for (int i = 0; i < addressLength; i++) {
+            if (address[i] != srcByte(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    boolean hasSrc(long high, long low, int length) {
+        return addressLength == length && srcHigh == high && srcLow == low;
+    }
+
+    private byte srcByte(int index) {
+        return addressByte(srcHigh, srcLow, addressLength, index);
+    }
+
+    private byte dstByte(int index) {
+        return addressByte(dstHigh, dstLow, addressLength, index);
+    }
+
+    private static byte addressByte(long high, long low, int length, int index) {
+        int fromEnd = length - 1 - index;
+        if (fromEnd < 8) {
+            return (byte) (low >>> (fromEnd * 8));
+        }
+        return (byte) (high >>> ((fromEnd - 8) * 8));
+    }
+
+    private static long readLong(byte[] address, int from, int to) {
+        long value = 0L;
+        for (int i = from; i < to; i++) {
+            value = (value << 8) | (address[i] & 0xFFL);
+        }
+        return value;
+    }
+
+    // IPv4 addresses sit in the low word, the first 8 bytes of IPv6 ones in the high word
+    static long highWord(byte[] address) {
+        return address.length > 8 ? readLong(address, 0, address.length - 8) : 0L;
+    }
+
+    static long lowWord(byte[] address) {
+        return readLong(address, Math.max(0, address.length - 8), address.length);
+    }
+
+    static byte[] toBytes(long high, long low, int length) {
+        byte[] address = new byte[length];
+        for (int i = 0; i < length; i++) {
+            address[i] = addressByte(high, low, length, i);
+        }
+        return address;
+    }
+
+    long getSrcHigh() {
+        return srcHigh;
+    }
+
+    long getSrcLow() {
+        return srcLow;
+    }
+
+    long getDstHigh() {
+        return dstHigh;
+    }
+
+    long getDstLow() {
+        return dstLow;
+    }
+
+    int getAddressLength() {
+        return addressLength;
     }
 
     public int getSrcPort() {
@@ -196,12 +353,12 @@ public class BasicPacketInfo {
     public String generateFlowId() {
         boolean forward = true;
 
-        for (int i = 0; i < this.src.length; i++) {
-            if (((Byte) (this.src[i])).intValue() != ((Byte) (this.dst[i])).intValue()) {
-                if (((Byte) (this.src[i])).intValue() > ((Byte) (this.dst[i])).intValue()) {
+        for (int i = 0; i < this.addressLength; i++) {
+            if (srcByte(i) != dstByte(i)) {
+                if (srcByte(i) > dstByte(i)) {
                     forward = false;
                 }
-                i = this.src.length;
+                i = this.addressLength;
             }
         }
 
@@ -232,11 +389,11 @@ public class BasicPacketInfo {
     }
 
     public String getSourceIP() {
-        return FormatUtils.ip(this.src);
+        return FormatUtils.ip(getSrc());
     }
 
     public String getDestinationIP() {
-        return FormatUtils.ip(this.dst);
+        return FormatUtils.ip(getDst());
     }
 
     public String fwdFlowId() {
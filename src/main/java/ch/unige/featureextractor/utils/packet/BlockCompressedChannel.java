@@ -0,0 +1,202 @@
+/*
+ * Copyright (c)  Benedetto Marco Serinelli
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ch.unige.featureextractor.utils.packet;
+
+import ch.unige.featureextractor.utils.ExtractorFeaturesModel;
+import net.jpountz.lz4.LZ4FrameOutputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+/*
+ * Compresses the bytes written to a file in blocks of a fixed size, each block on the shared
+ * compression pool as an independent gzip member or LZ4 frame. The blocks are appended in order,
+ * so the file is a plain concatenation that gunzip and lz4 decode as a single stream.
+ */
+public class BlockCompressedChannel implements WritableByteChannel {
+  public static final String GZIP = "gzip";
+  public static final String LZ4 = "lz4";
+  private static ExecutorService pool;
+  private static int poolThreads;
+  private final FileChannel channel;
+  private final String codec;
+  private final Queue<Future<byte[]>> pending = new ArrayDeque<>();
+  private final int maxPending;
+  private byte[] block;
+  private int length;
+  private boolean open = true;
+
+  public BlockCompressedChannel(File file, String codec, int blockSize) throws IOException {
+    this.codec = codec;
+    this.block = new byte[blockSize];
+    this.maxPending = 2 * getPoolThreads();
+    this.channel =
+            FileChannel.open(
+                    file.toPath(),
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+  }
+
+  public static String getSuffix(String codec) {
+    return LZ4.equals(codec) ? ".lz4" : ".gz";
+  }
+
+  private static synchronized ExecutorService getPool() {
+    if (pool == null) {
+      int threads =
+              PacketLoader.getIntProperty(
+                      ExtractorFeaturesModel.rb,
+                      "output.compression.threads",
+                      Runtime.getRuntime().availableProcessors());
+      poolThreads = Math.max(1, threads);
+      pool =
+              Executors.newFixedThreadPool(
+                      poolThreads,
+                      runnable -> {
+                        Thread thread = new Thread(runnable, "BlockCompressor");
+                        thread.setDaemon(true);
+                        return thread;
+                      });
+    }
+    return pool;
+  }
+
+  private static synchronized int getPoolThreads() {
+    getPool();
+    return poolThreads;
+  }
+
+  @Override
+  public int write(ByteBuffer source) throws IOException {
+    if (!open) {
+      throw new ClosedChannelException();
+    }
+    int written = source.remaining();
+    while (source.hasRemaining()) {
+      int count = Math.min(source.remaining(), block.length - length);
+      source.get(block, length, count);
+      length += count;
+      if (length == block.length) {
+        submitBlock();
+        writeFinished();
+      }
+    }
+    return written;
+  }
+
+  private void submitBlock() {
+    byte[] data = block;
+    int size = length;
+    pending.add(getPool().submit(() -> compress(data, size)));
+    block = new byte[block.length];
+    length = 0;
+  }
+
+  private void writeFinished() throws IOException {
+    // the finished blocks are written as soon as they are at the head of the queue
+    while (!pending.isEmpty() && (pending.size() > maxPending || pending.peek().isDone())) {
+      writeHead();
+    }
+  }
+
+  private byte[] compress(byte[] data, int size) throws IOException {
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream(size / 4 + 64);
+    OutputStream output =
+            LZ4.equals(codec)
+                    ? new LZ4FrameOutputStream(compressed)
+                    : new GZIPOutputStream(compressed, 64 * 1024);
+    try {
+      output.write(data, 0, size);
+    } finally {
+      output.close();
+    }
+    return compressed.toByteArray();
+  }
+
+  private void writeHead() throws IOException {
+    byte[] compressed;
+    try {
+      compressed = pending.remove().get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while compressing");
+    } catch (ExecutionException e) {
+      throw new IOException("Error to compress block", e.getCause());
+    }
+    ByteBuffer buffer = ByteBuffer.wrap(compressed);
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  // Compresses the partial block as a member of its own and writes every pending block
+  public void flush() throws IOException {
+    if (!open) {
+      throw new ClosedChannelException();
+    }
+    if (length > 0) {
+      submitBlock();
+    }
+    while (!pending.isEmpty()) {
+      writeHead();
+    }
+  }
+
+  @Override
+  public boolean isOpen() {
+    return open;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (!open) {
+      return;
+    }
+    open = false;
+    try {
+      if (length > 0) {
+        submitBlock();
+      }
+      while (!pending.isEmpty()) {
+        writeHead();
+      }
+    } finally {
+      for (Future<byte[]> future : pending) {
+        future.cancel(false);
+      }
+      channel.close();
+    }
+  }
+}
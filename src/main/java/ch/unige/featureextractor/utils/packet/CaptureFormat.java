@@ -0,0 +1,86 @@
+/*
+ * Copyright (c)  Benedetto Marco Serinelli
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ch.unige.featureextractor.utils.packet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * Recognizes a capture by its first bytes: a classic pcap in either byte order, with microsecond
+ * or nanosecond timestamps, or a pcapng starting with its section header block.
+ */
+public final class CaptureFormat {
+  public static final String PCAP = "pcap";
+  public static final String PCAP_NANO = "pcap-ns";
+  public static final String PCAPNG = "pcapng";
+  // a pcapng section header is recognized by its type and its byte-order magic
+  static final int SNIFF_LENGTH = 12;
+
+  private CaptureFormat() {
+  }
+
+  // The format of the capture, null when the file is not a capture or cannot be read
+  public static String sniff(File file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      ByteBuffer head = ByteBuffer.allocate(SNIFF_LENGTH);
+      int read = 0;
+      while (head.hasRemaining() && read >= 0) {
+        read = channel.read(head);
+      }
+      head.flip();
+      return of(head, 0);
+    }
+  }
+
+  // The format of the capture starting at buf[index], the bytes after the limit are not read
+  static String of(ByteBuffer buf, int index) {
+    if (buf.limit() - index < 4) {
+      return null;
+    }
+    int magic = buf.getInt(index);
+    switch (magic) {
+      case MappedPacketReader.PCAP_MAGIC:
+      case MappedPacketReader.PCAP_MAGIC_SWAPPED:
+        return PCAP;
+      case MappedPacketReader.PCAP_NANO_MAGIC:
+      case MappedPacketReader.PCAP_NANO_MAGIC_SWAPPED:
+        return PCAP_NANO;
+      case PcapngParser.SECTION_HEADER_BLOCK:
+        if (buf.limit() - index >= SNIFF_LENGTH) {
+          int byteOrder = buf.getInt(index + 8);
+          if (byteOrder == PcapngParser.BYTE_ORDER_MAGIC
+                  || byteOrder == Integer.reverseBytes(PcapngParser.BYTE_ORDER_MAGIC)) {
+            return PCAPNG;
+          }
+        }
+        return null;
+      default:
+        return null;
+    }
+  }
+
+  // Byte order of the records of a classic pcap
+  static boolean isLittleEndian(int magic) {
+    return magic == MappedPacketReader.PCAP_MAGIC_SWAPPED
+            || magic == MappedPacketReader.PCAP_NANO_MAGIC_SWAPPED;
+  }
+}
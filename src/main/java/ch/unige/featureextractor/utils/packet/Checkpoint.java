@@ -0,0 +1,180 @@
+/*
+ * Copyright (c)  Benedetto Marco Serinelli
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ch.unige.featureextractor.utils.packet;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ResourceBundle;
+
+/*
+ * Periodic checkpoint of the extraction of a capture: the offset of the reader, the current flows
+ * and the length of each CSV output once its rows are on the disk. A run restarted on the same
+ * capture truncates the outputs to these lengths and goes on from the offset, so it writes the
+ * same bytes as a run that did not stop.
+ * The file is replaced atomically and deleted once the capture is done.
+ */
+final class Checkpoint {
+  private static final Logger logger = LogManager.getLogger(Checkpoint.class);
+  private static final int MAGIC = 0x46454350;
+  private static final int VERSION = 1;
+  private final File file;
+  private final File pcap;
+  private final long intervalMillis;
+  private long nextSave;
+
+  Checkpoint(File dir, File pcap, long intervalMillis) {
+    this.file = new File(dir, pcap.getName() + ".checkpoint");
+    this.pcap = pcap;
+    this.intervalMillis = intervalMillis;
+    this.nextSave = System.currentTimeMillis() + intervalMillis;
+  }
+
+  /*
+   * Restores the flows and the reader offset saved for the capture, and returns the outputs to
+   * append to; null when there is nothing to resume, flowGen is then left to be discarded.
+   */
+  List<ExtractorOutput> restore(
+          List<String> extractors, FlowGenerator flowGen, MappedPacketReader reader) {
+    if (!file.isFile()) {
+      return null;
+    }
+    try (DataInputStream in =
+                 new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        logger.warn("Ignore the checkpoint [" + file + "] of another version");
+        return null;
+      }
+      if (!pcap.getAbsolutePath().equals(in.readUTF())
+              || pcap.length() != in.readLong()
+              || pcap.lastModified() != in.readLong()) {
+        logger.warn("Ignore the checkpoint [" + file + "] of another capture");
+        return null;
+      }
+      long position = in.readLong();
+      long firstPacket = in.readLong();
+      long lastPacket = in.readLong();
+      int count = in.readInt();
+      if (count != extractors.size()) {
+        logger.warn("Ignore the checkpoint [" + file + "] of other extractors");
+        return null;
+      }
+      List<ExtractorOutput> outputs = new ArrayList<>();
+      long[] lengths = new long[count];
+      for (int i = 0; i < count; i++) {
+        String extractor = in.readUTF();
+        ResourceBundle rb = ResourceBundle.getBundle(extractor);
+        if (!extractor.equals(extractors.get(i))
+                || !FlowFeature.getHeader(rb).equals(in.readUTF())) {
+          logger.warn("Ignore the checkpoint [" + file + "] of other extractors");
+          return null;
+        }
+        File output = new File(in.readUTF());
+        lengths[i] = in.readLong();
+        if (output.length() < lengths[i]) {
+          logger.warn("Ignore the checkpoint [" + file + "], [" + output + "] is too short");
+          return null;
+        }
+        outputs.add(
+                new ExtractorOutput(extractor, rb, PacketLoader.OUTPUT_FORMAT_CSV, null, output));
+      }
+      flowGen.readCheckpoint(in);
+      // the rows written after the checkpoint are written again
+      for (int i = 0; i < count; i++) {
+        File output = outputs.get(i).getFile();
+        try (FileChannel channel = FileChannel.open(output.toPath(), StandardOpenOption.WRITE)) {
+          channel.truncate(lengths[i]);
+        }
+      }
+      reader.seek(position, firstPacket, lastPacket);
+      logger.info("Resume [" + pcap + "] at offset " + position);
+      return outputs;
+    } catch (Exception e) {
+      logger.error("Error to read checkpoint [" + file + "]", e);
+      return null;
+    }
+  }
+
+  // Polled between two packets, a checkpoint is never taken in the middle of one
+  boolean isDue() {
+    return System.currentTimeMillis() >= nextSave;
+  }
+
+  void save(
+          MappedPacketReader reader,
+          FlowGenerator flowGen,
+          FlowWriter flowWriter,
+          List<ExtractorOutput> outputs) {
+    File tmp = new File(file.getPath() + ".tmp");
+    try {
+      flowWriter.sync();
+      file.getParentFile().mkdirs();
+      FileOutputStream stream = new FileOutputStream(tmp);
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(pcap.getAbsolutePath());
+        out.writeLong(pcap.length());
+        out.writeLong(pcap.lastModified());
+        out.writeLong(reader.getPosition());
+        out.writeLong(reader.getFirstPacket());
+        out.writeLong(reader.getLastPacket());
+        out.writeInt(outputs.size());
+        for (ExtractorOutput output : outputs) {
+          out.writeUTF(output.getExtractor());
+          out.writeUTF(FlowFeature.getHeader(output.getRb()));
+          out.writeUTF(output.getFile().getAbsolutePath());
+          out.writeLong(output.getFile().length());
+        }
+        flowGen.writeCheckpoint(out);
+        out.flush();
+        stream.getFD().sync();
+      }
+      Files.move(
+              tmp.toPath(),
+              file.toPath(),
+              StandardCopyOption.REPLACE_EXISTING,
+              StandardCopyOption.ATOMIC_MOVE);
+      logger.debug("Checkpoint [" + pcap + "] at offset " + reader.getPosition());
+    } catch (IOException e) {
+      logger.error("Error to write checkpoint [" + file + "]", e);
+    }
+    nextSave = System.currentTimeMillis() + intervalMillis;
+  }
+
+  void delete() {
+    if (file.exists() && !file.delete()) {
+      logger.warn("Unable to delete checkpoint [" + file + "]");
+    }
+  }
+}
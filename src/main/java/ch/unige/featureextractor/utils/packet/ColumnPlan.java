@@ -0,0 +1,74 @@
+/*
+ * Copyright (c)  Benedetto Marco Serinelli
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ch.unige.featureextractor.utils.packet;
+
+import ch.unige.featureextractor.utils.ExtractorFeaturesModel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/*
+ * Ordered columns enabled by an extractor .properties file, compiled once per bundle: the header
+ * and every flow row iterate the same features instead of looking the bundle up for each value.
+ */
+public final class ColumnPlan {
+  public static final String TIMESTAMP_FORMAT = "dd/MM/yyyy hh:mm:ss a";
+  private static final ConcurrentMap<ResourceBundle, ColumnPlan> plans = new ConcurrentHashMap<>();
+  private final FlowFeature[] features;
+  private final String header;
+
+  private ColumnPlan(ResourceBundle rb) {
+    List<FlowFeature> enabled = new ArrayList<>();
+    StringBuilder names = new StringBuilder();
+    for (FlowFeature feature : FlowFeature.values()) {
+      if (rb.containsKey(feature.getCvsField())) {
+        if (!enabled.isEmpty()) {
+          names.append(ExtractorFeaturesModel.SEPARATOR);
+        }
+        enabled.add(feature);
+        names.append(feature.getName());
+      }
+    }
+    this.features = enabled.toArray(new FlowFeature[0]);
+    this.header = names.toString();
+  }
+
+  public static ColumnPlan of(ResourceBundle rb) {
+    return plans.computeIfAbsent(rb, ColumnPlan::new);
+  }
+
+  public FlowFeature[] getFeatures() {
+    return features.clone();
+  }
+
+  FlowFeature getFeature(int column) {
+    return features[column];
+  }
+
+  public int size() {
+    return features.length;
+  }
+
+  public String getHeader() {
+    return header;
+  }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c)  Benedetto Marco Serinelli
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ch.unige.featureextractor.utils.packet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+
+/*
+ * SHA-256 of the whole content of a capture, computed along the decoding: the reader reports the
+ * offset it has read up to and the digest catches up every STEP bytes, from the window the reader
+ * has mapped or else by reading the pages the reader has just loaded. The bytes the reader does
+ * not go through (before a resumed checkpoint, after the last record) are read by finish().
+ * An error only fails the digest, it is thrown by finish() and never stops the reader.
+ */
+final class ContentDigest {
+  private static final int STEP = 1024 * 1024;
+  private final File file;
+  private final MessageDigest sha256 = PcapIndex.sha256();
+  private FileChannel channel;
+  private ByteBuffer buffer;
+  private long hashed;
+  private IOException failure;
+
+  ContentDigest(File file) {
+    this.file = file;
+  }
+
+  // The reader went through the bytes before offset
+  void follow(long offset) {
+    if (offset - hashed >= STEP) {
+      read(offset);
+    }
+  }
+
+  // As follow(offset), window holding the bytes of the file from windowStart on
+  void follow(ByteBuffer window, long windowStart, long offset) {
+    if (offset - hashed >= STEP) {
+      update(window, windowStart, offset);
+    }
+  }
+
+  // Digests up to offset now, before the reader leaves the window
+  void update(ByteBuffer window, long windowStart, long offset) {
+    if (offset <= hashed) {
+      return;
+    }
+    if (window != null
+            && failure == null
+            && hashed >= windowStart
+            && offset <= windowStart + window.limit()) {
+      ByteBuffer bytes = window.duplicate();
+      bytes.limit((int) (offset - windowStart));
+      bytes.position((int) (hashed - windowStart));
+      sha256.update(bytes);
+      hashed = offset;
+    } else {
+      read(offset);
+    }
+  }
+
+  // The hex SHA-256 of the content, the bytes not digested yet are read to the end of the file
+  String finish() throws IOException {
+    read(Long.MAX_VALUE);
+    close();
+    if (failure != null) {
+      throw failure;
+    }
+    return PcapIndex.toHex(sha256.digest());
+  }
+
+  private void read(long end) {
+    if (failure != null) {
+      return;
+    }
+    try {
+      if (channel == null) {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        buffer = ByteBuffer.allocateDirect(STEP);
+      }
+      while (hashed < end) {
+        buffer.clear();
+        buffer.limit((int) Math.min(STEP, end - hashed));
+        int read = channel.read(buffer, hashed);
+        if (read < 0) {
+          break;
+        }
+        buffer.flip();
+        sha256.update(buffer);
+        hashed += read;
+      }
+    } catch (IOException e) {
+      failure = e;
+      close();
+    }
+  }
+
+  // Releases the file of a digest that will not be finished
+  void close() {
+    if (channel != null) {
+      try {
+        channel.close();
+      } catch (IOException e) {
+        if (failure == null) {
+          failure = e;
+        }
+      }
+      channel = null;
+    }
+  }
+}
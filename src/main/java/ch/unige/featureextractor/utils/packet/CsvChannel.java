@@ -0,0 +1,184 @@
+/*
+ * Copyright (c)  Benedetto Marco Serinelli
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ch.unige.featureextractor.utils.packet;
+
+import ch.unige.featureextractor.utils.ExtractorFeaturesModel;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/*
+ * Appends the encoded rows to a CSV file, or to a BlockCompressedChannel for the compressed
+ * outputs, from a dedicated writer thread. The rows fill one of two direct buffers while the
+ * writer drains the other, so the caller waits only when the writer is a whole buffer behind.
+ * The errors of the writer are thrown by the next write, flush or close.
+ */
+public class CsvChannel implements Closeable {
+  private static final int BUFFER_SIZE = 256 * 1024;
+  private static final ByteBuffer END = ByteBuffer.allocate(0);
+  private final WritableByteChannel channel;
+  private final BlockingQueue<ByteBuffer> full = new ArrayBlockingQueue<>(1);
+  private final BlockingQueue<ByteBuffer> free = new ArrayBlockingQueue<>(1);
+  private final Thread writer;
+  private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+  private volatile IOException failure;
+  private boolean closed;
+
+  public CsvChannel(File file) throws IOException {
+    this(
+            FileChannel.open(
+                    file.toPath(),
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND));
+  }
+
+  public CsvChannel(WritableByteChannel channel) {
+    this.channel = channel;
+    free.add(ByteBuffer.allocateDirect(BUFFER_SIZE));
+    writer = new Thread(this::drainBuffers, "CsvWriter");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  private void drainBuffers() {
+    try {
+      while (true) {
+        ByteBuffer source = full.take();
+        if (source == END) {
+          return;
+        }
+        // after an error the buffers are still handed back, their rows are dropped
+        if (failure == null) {
+          try {
+            while (source.hasRemaining()) {
+              channel.write(source);
+            }
+          } catch (IOException e) {
+            failure = e;
+          }
+        }
+        source.clear();
+        free.put(source);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  public void writeLine(String line) throws IOException {
+    byte[] bytes = (line + ExtractorFeaturesModel.LINE_SEP).getBytes();
+    write(bytes, 0, bytes.length);
+  }
+
+  public void write(CsvEncoder encoder) throws IOException {
+    write(encoder.getBuffer(), 0, encoder.length());
+  }
+
+  public void write(byte[] bytes, int offset, int count) throws IOException {
+    checkFailure();
+    while (count > 0) {
+      if (!buffer.hasRemaining()) {
+        flush();
+      }
+      int size = Math.min(count, buffer.remaining());
+      buffer.put(bytes, offset, size);
+      offset += size;
+      count -= size;
+    }
+  }
+
+  // Hands the buffered rows to the writer thread, use close to wait until they are written
+  public void flush() throws IOException {
+    checkFailure();
+    if (buffer.position() == 0) {
+      return;
+    }
+    buffer.flip();
+    try {
+      full.put(buffer);
+      buffer = free.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while writing");
+    }
+  }
+
+  /*
+   * Waits until the writer thread has written every row to the channel, a compressed channel
+   * ending its partial block. The writer is idle until the next flush, so the channel can be used
+   * from the calling thread.
+   */
+  public void drain() throws IOException {
+    flush();
+    try {
+      free.put(free.take());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while writing");
+    }
+    checkFailure();
+    if (channel instanceof BlockCompressedChannel) {
+      ((BlockCompressedChannel) channel).flush();
+    }
+  }
+
+  // Waits until the rows are in the channel, and a file on the disk
+  public void sync() throws IOException {
+    drain();
+    if (channel instanceof FileChannel) {
+      ((FileChannel) channel).force(false);
+    }
+  }
+
+  private void checkFailure() throws IOException {
+    if (failure != null) {
+      throw new IOException("Error to write CSV", failure);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      flush();
+    } finally {
+      try {
+        full.put(END);
+        writer.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } finally {
+        channel.close();
+      }
+    }
+    checkFailure();
+  }
+}
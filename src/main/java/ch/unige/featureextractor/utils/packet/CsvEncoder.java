@@ -0,0 +1,181 @@
+/*
+ * Copyright (c)  Benedetto Marco Serinelli
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ch.unige.featureextractor.utils.packet;
+
+import ch.unige.featureextractor.utils.ExtractorFeaturesModel;
+import ch.unige.featureextractor.utils.Utility;
+import org.jnetpcap.packet.format.FormatUtils;
+
+import java.util.Arrays;
+
+/*
+ * Encodes the flow rows straight into a reusable byte buffer, with the same text as RowBuilder.
+ * Integers, integral doubles and IPv4 addresses are written digit by digit and the timestamp is
+ * formatted once per second, so most of the rows are encoded without allocating.
+ * An instance is not thread safe, every writing thread keeps its own.
+ */
+public class CsvEncoder implements FeatureWriter {
+  private static final byte SEPARATOR = (byte) ExtractorFeaturesModel.SEPARATOR.charAt(0);
+  private static final byte[] LINE_SEP = ExtractorFeaturesModel.LINE_SEP.getBytes();
+  // from this magnitude Double.toString switches to the computerized scientific notation
+  private static final double PLAIN_LIMIT = 1.0e7;
+  private byte[] buffer = new byte[1024];
+  private int length;
+  private boolean first = true;
+  private long cachedSecond = Long.MIN_VALUE;
+  private byte[] cachedTimestamp;
+
+  public void encode(BasicFlow flow, ColumnPlan plan) {
+    reset();
+    flow.writeFeatures(plan, this);
+    endRow();
+  }
+
+  public void reset() {
+    length = 0;
+    first = true;
+  }
+
+  public void endRow() {
+    put(LINE_SEP);
+    first = true;
+  }
+
+  public byte[] getBuffer() {
+    return buffer;
+  }
+
+  public int length() {
+    return length;
+  }
+
+  @Override
+  public void writeString(String value) {
+    next();
+    putAscii(value);
+  }
+
+  @Override
+  public void writeLong(long value) {
+    next();
+    putLong(value);
+  }
+
+  @Override
+  public void writeDouble(double value) {
+    next();
+    // -0.0, NaN, the infinities and the fractional values keep the text of Double.toString
+    if (value == Math.rint(value)
+            && Math.abs(value) < PLAIN_LIMIT
+            && Double.doubleToRawLongBits(value) != Long.MIN_VALUE) {
+      putLong((long) value);
+      ensure(2);
+      buffer[length++] = '.';
+      buffer[length++] = '0';
+    } else {
+      putAscii(Double.toString(value));
+    }
+  }
+
+  @Override
+  public void writeAddress(long high, long low, int addressLength) {
+    next();
+    if (addressLength == 4) {
+      for (int shift = 24; shift >= 0; shift -= 8) {
+        putLong((low >>> shift) & 0xFF);
+        if (shift > 0) {
+          ensure(1);
+          buffer[length++] = '.';
+        }
+      }
+    } else {
+      putAscii(FormatUtils.ip(BasicPacketInfo.toBytes(high, low, addressLength)));
+    }
+  }
+
+  @Override
+  public void writeTimestamp(long epochMillis) {
+    next();
+    long second = Math.floorDiv(epochMillis, 1000L);
+    if (second != cachedSecond || cachedTimestamp == null) {
+      cachedTimestamp =
+              Utility.convertMilliseconds2String(second * 1000L, ColumnPlan.TIMESTAMP_FORMAT)
+                      .getBytes();
+      cachedSecond = second;
+    }
+    put(cachedTimestamp);
+  }
+
+  private void next() {
+    if (first) {
+      first = false;
+    } else {
+      ensure(1);
+      buffer[length++] = SEPARATOR;
+    }
+  }
+
+  private void putLong(long value) {
+    if (value == Long.MIN_VALUE) {
+      putAscii(Long.toString(value));
+      return;
+    }
+    ensure(20);
+    if (value < 0) {
+      buffer[length++] = '-';
+      value = -value;
+    }
+    int digits = 1;
+    for (long rest = value / 10; rest != 0; rest /= 10) {
+      digits++;
+    }
+    for (int i = length + digits - 1; i >= length; i--) {
+      buffer[i] = (byte) ('0' + value % 10);
+      value /= 10;
+    }
+    length += digits;
+  }
+
+  // The rows are ASCII, any other text takes the platform charset like String.getBytes()
+  private void putAscii(String value) {
+    int count = value.length();
+    ensure(count);
+    for (int i = 0; i < count; i++) {
+      char c = value.charAt(i);
+      if (c >= 0x80) {
+        length -= i;
+        put(value.getBytes());
+        return;
+      }
+      buffer[length++] = (byte) c;
+    }
+  }
+
+  private void put(byte[] bytes) {
+    ensure(bytes.length);
+    System.arraycopy(bytes, 0, buffer, length, bytes.length);
+    length += bytes.length;
+  }
+
+  private void ensure(int count) {
+    if (length + count > buffer.length) {
+      buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + count));
+    }
+  }
+}
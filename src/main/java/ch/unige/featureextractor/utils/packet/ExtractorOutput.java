@@ -0,0 +1,62 @@
+/*
+ * Copyright (c)  Benedetto Marco Serinelli
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ch.unige.featureextractor.utils.packet;
+
+import java.io.File;
+import java.util.ResourceBundle;
+
+// Output file of one extractor (.properties column set) for the capture being processed
+public class ExtractorOutput {
+  private final String extractor;
+  private final ResourceBundle rb;
+  private final String format;
+  private final String compression;
+  private final File file;
+
+  public ExtractorOutput(
+          String extractor, ResourceBundle rb, String format, String compression, File file) {
+    this.extractor = extractor;
+    this.rb = rb;
+    this.format = format;
+    this.compression = compression;
+    this.file = file;
+  }
+
+  public String getExtractor() {
+    return extractor;
+  }
+
+  public ResourceBundle getRb() {
+    return rb;
+  }
+
+  // PacketLoader.OUTPUT_FORMAT_CSV or PacketLoader.OUTPUT_FORMAT_ARROW
+  public String getFormat() {
+    return format;
+  }
+
+  // BlockCompressedChannel.GZIP or BlockCompressedChannel.LZ4, null for a plain CSV
+  public String getCompression() {
+    return compression;
+  }
+
+  public File getFile() {
+    return file;
+  }
+}
@@ -153,17 +153,7 @@ public enum FlowFeature {
 
   public static String getHeader(ResourceBundle rb) {
     logger.error("Rb " + rb.getBaseBundleName());
-    StringBuilder header = new StringBuilder();
-
-    for (FlowFeature feature : FlowFeature.values()) {
-      String csvFeatureField = feature.getCvsField();
-      if (rb.containsKey(csvFeatureField)) {
-        logger.debug("csvFeatureField " + csvFeatureField);
-        header.append(feature.getName()).append(",");
-      }
-    }
-    header.deleteCharAt(header.length() - 1);
-    return header.toString();
+    return ColumnPlan.of(rb).getHeader();
   }
 
   public static List<FlowFeature> getFeatureList() {
@@ -18,27 +18,29 @@
  */
 package ch.unige.featureextractor.utils.packet;
 
-import ch.unige.featureextractor.utils.ExtractorFeaturesModel;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.apache.tika.io.IOUtils;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.ResourceBundle;
 
-public class FlowGenerator {
+public class FlowGenerator implements FlowProcessor {
   private static final Logger logger = LogManager.getLogger(FlowGenerator.class);
   private final boolean bidirectional;
   private final long flowTimeOut;
   private final long flowActivityTimeOut;
-  private HashMap<String, BasicFlow> currentFlows;
+  private FlowTable currentFlows;
+  private final FlowKey lookupKey = new FlowKey();
   private HashMap<Integer, BasicFlow> finishedFlows;
   private HashMap<String, ArrayList> IPAddresses;
   private int finishedFlowCount;
+  private FlowGenListener mListener;
+  private FlowTimingWheel expiryWheel;
 
   public FlowGenerator(boolean bidirectional, long flowTimeout, long activityTimeout) {
     super();
@@ -49,71 +51,113 @@ public class FlowGenerator {
   }
 
   private void init() {
-    currentFlows = new HashMap<>();
+    currentFlows = new FlowTable();
     finishedFlows = new HashMap<>();
     IPAddresses = new HashMap<>();
     finishedFlowCount = 0;
+    // ticks of one activity timeout: a flow that stopped receiving packets is finished at most one
+    // tick after its flow timeout
+    expiryWheel = new FlowTimingWheel(flowTimeOut, Math.min(flowActivityTimeOut, flowTimeOut));
   }
 
+  @Override
+  public void addFlowListener(FlowGenListener listener) {
+    mListener = listener;
+  }
+
+  @Override
   public void addPacket(BasicPacketInfo packet) {
     if (packet == null) {
       return;
     }
 
-    BasicFlow flow;
     long currentTimestamp = packet.getTimeStamp();
-    String id = "";
-
-    if (this.currentFlows.containsKey(packet.fwdFlowId())
-            || this.currentFlows.containsKey(packet.bwdFlowId())) {
-
-      if (this.currentFlows.containsKey(packet.fwdFlowId())) {
-        id = packet.fwdFlowId();
-      } else {
-        id = packet.bwdFlowId();
-      }
+    expiryWheel.advance(currentTimestamp, this::expireFlow);
 
-      flow = currentFlows.get(id);
+    // the same key for both directions, a single lookup finds the flow
+    lookupKey.set(packet);
+    BasicFlow flow = currentFlows.get(lookupKey);
+    if (flow != null) {
       if ((currentTimestamp - flow.getFlowStartTime()) > flowTimeOut) {
-        currentFlows.remove(id);
-        currentFlows.put(
-                id,
-                new BasicFlow(
-                        bidirectional,
-                        packet,
-                        flow.getSrc(),
-                        flow.getDst(),
-                        flow.getSrcPort(),
-                        flow.getDstPort()));
+        // expired within the current tick of the wheel
+        currentFlows.remove(flow.tableKey);
+        expiryWheel.cancel(flow);
+        finishFlow(flow);
+        // started as any new flow, so it does not matter whether the wheel got the old one first
+        startFlow(packet);
 
         int cfsize = currentFlows.size();
         if (cfsize % 50 == 0) {
           logger.debug("Timeout current has {} flow", cfsize);
         }
 
-        // Flow finished due FIN flag (tcp only):
+        // Flow finished due FIN or RST flag (tcp only):
         // 1.- we add the packet-in-process to the flow (it is the last packet)
         // 2.- we move the flow to finished flow list
         // 3.- we eliminate the flow from the current flow list
-      } else if (packet.hasFlagFIN()) {
+      } else if (packet.hasFlagFIN() || packet.hasFlagRST()) {
         logger.debug("FlagFIN current has {} flow", currentFlows.size());
         flow.addPacket(packet);
-        /*if (mListener != null) {
-            mListener.onFlowGenerated(flow);
-        } else {
-            finishedFlows.put(getFlowCount(), flow);
-        }*/
-        currentFlows.remove(id);
+        finishFlow(flow);
+        currentFlows.remove(flow.tableKey);
+        expiryWheel.cancel(flow);
       } else {
         flow.updateActiveIdleTime(currentTimestamp, this.flowActivityTimeOut);
         flow.addPacket(packet);
-        currentFlows.put(id, flow);
       }
     } else {
-      currentFlows.put(packet.fwdFlowId(), new BasicFlow(bidirectional, packet));
+      startFlow(packet);
+    }
+  }
+
+  /*
+   * The flow timeout is counted from the first packet, so the expiry time is set once: a flow
+   * older than it would be cut by its next packet anyway, the wheel finishes the ones that stopped
+   * receiving packets.
+   */
+  private void startFlow(BasicPacketInfo packet) {
+    BasicFlow flow = new BasicFlow(bidirectional, packet);
+    flow.tableKey = new FlowKey(lookupKey);
+    currentFlows.put(flow.tableKey, flow);
+    expiryWheel.schedule(flow, flow.getFlowStartTime() + flowTimeOut);
+  }
+
+  private void expireFlow(BasicFlow flow) {
+    currentFlows.remove(flow.tableKey);
+    finishFlow(flow);
+  }
+
+  private void finishFlow(BasicFlow flow) {
+    if (mListener != null) {
+      mListener.onFlowGenerated(flow);
+    } else {
+      finishedFlows.put(getFlowCount(), flow);
+    }
+  }
+
+  // Hands the flows still open at the end of the capture to the listener
+  @Override
+  public void finishCurrentFlows() {
+    for (BasicFlow flow : currentFlows.values()) {
+      finishFlow(flow);
     }
+    currentFlows.clear();
+    expiryWheel.clear();
+  }
+
+  // Saves the current flows, with the layout of the table and of the wheel
+  void writeCheckpoint(DataOutput out) throws IOException {
+    currentFlows.writeCheckpoint(out);
+    expiryWheel.writeCheckpoint(out, currentFlows);
+  }
+
+  // Replaces the current flows with the ones of a checkpoint, to be called before any packet
+  void readCheckpoint(DataInput in) throws IOException {
+    currentFlows.readCheckpoint(in, () -> new BasicFlow(bidirectional, new BasicPacketInfo()));
+    expiryWheel.readCheckpoint(in, currentFlows);
   }
 
+  @Override
   public long dumpLabeledCurrentFlow(String fileFullPath, String header, ResourceBundle rb) {
     if (fileFullPath == null || header == null) {
       String ex = String.format("fullFilePath=%s,filename=%s", fileFullPath);
@@ -121,27 +165,19 @@ public class FlowGenerator {
     }
 
     File file = new File(fileFullPath);
-    FileOutputStream output = null;
-    int total = 0;
+    CsvChannel output = null;
+    long total = 0;
 
     try {
-      output = new FileOutputStream(file, true);
-      output.write((header + ExtractorFeaturesModel.LINE_SEP).getBytes());
-
-      for (BasicFlow flow : currentFlows.values()) {
-        if (flow.packetCount() > 1) {
-          output.write(
-                  (flow.dumpFlowBasedFeaturesEx(rb) + ExtractorFeaturesModel.LINE_SEP).getBytes());
-          total++;
-        }
-      }
+      output = new CsvChannel(file);
+      output.writeLine(header);
+      total = writeCurrentFlows(output, rb);
     } catch (IOException e) {
       logger.debug(e.getMessage());
     } finally {
       try {
         if (output != null) {
-          output.flush();
-          IOUtils.closeQuietly(output);
+          output.close();
         }
       } catch (IOException e) {
         logger.debug(e.getMessage());
@@ -150,6 +186,31 @@ public class FlowGenerator {
     return total;
   }
 
+  long writeCurrentFlows(CsvChannel output, ResourceBundle rb) throws IOException {
+    ColumnPlan plan = ColumnPlan.of(rb);
+    CsvEncoder row = new CsvEncoder();
+    long total = 0;
+    for (BasicFlow flow : finishedFlows.values()) {
+      if (flow.packetCount() > 1) {
+        row.encode(flow, plan);
+        output.write(row);
+        total++;
+      }
+    }
+    for (BasicFlow flow : currentFlows.values()) {
+      if (flow.packetCount() > 1) {
+        row.encode(flow, plan);
+        output.write(row);
+        total++;
+      }
+    }
+    return total;
+  }
+
+  @Override
+  public void close() {
+  }
+
   private int getFlowCount() {
     this.finishedFlowCount++;
     return this.finishedFlowCount;
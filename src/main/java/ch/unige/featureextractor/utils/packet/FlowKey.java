@@ -0,0 +1,106 @@
+/*
+ * Copyright (c)  Benedetto Marco Serinelli
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ch.unige.featureextractor.utils.packet;
+
+/*
+ * Binary key of a bidirectional flow: the two endpoints (address and port) in canonical order,
+ * the protocol and the address length, so both directions of a flow give the same key without
+ * building the printable Flow ID.
+ */
+final class FlowKey {
+  long firstHigh;
+  long firstLow;
+  long secondHigh;
+  long secondLow;
+  // ports, protocol and address length packed in one word
+  long ports;
+
+  FlowKey() {
+  }
+
+  FlowKey(FlowKey other) {
+    firstHigh = other.firstHigh;
+    firstLow = other.firstLow;
+    secondHigh = other.secondHigh;
+    secondLow = other.secondLow;
+    ports = other.ports;
+  }
+
+  void set(BasicPacketInfo packet) {
+    long srcHigh = packet.getSrcHigh();
+    long srcLow = packet.getSrcLow();
+    long dstHigh = packet.getDstHigh();
+    long dstLow = packet.getDstLow();
+    int srcPort = packet.getSrcPort() & 0xFFFF;
+    int dstPort = packet.getDstPort() & 0xFFFF;
+    int order = Long.compareUnsigned(srcHigh, dstHigh);
+    if (order == 0) {
+      order = Long.compareUnsigned(srcLow, dstLow);
+    }
+    if (order == 0) {
+      order = Integer.compare(srcPort, dstPort);
+    }
+    long tail =
+            ((long) (packet.getProtocol() & 0xFF) << 32) | ((long) packet.getAddressLength() << 40);
+    if (order <= 0) {
+      firstHigh = srcHigh;
+      firstLow = srcLow;
+      secondHigh = dstHigh;
+      secondLow = dstLow;
+      ports = tail | ((long) srcPort << 16) | dstPort;
+    } else {
+      firstHigh = dstHigh;
+      firstLow = dstLow;
+      secondHigh = srcHigh;
+      secondLow = srcLow;
+      ports = tail | ((long) dstPort << 16) | srcPort;
+    }
+  }
+
+  int hash() {
+    long hash = firstHigh * 0x9E3779B97F4A7C15L;
+    hash = (hash ^ firstLow) * 0xC2B2AE3D27D4EB4FL;
+    hash = (hash ^ secondHigh) * 0x9E3779B97F4A7C15L;
+    hash = (hash ^ secondLow) * 0xC2B2AE3D27D4EB4FL;
+    hash = (hash ^ ports) * 0x9E3779B97F4A7C15L;
+    hash ^= hash >>> 32;
+    return (int) hash;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof FlowKey)) {
+      return false;
+    }
+    FlowKey other = (FlowKey) o;
+    return firstHigh == other.firstHigh
+            && firstLow == other.firstLow
+            && secondHigh == other.secondHigh
+            && secondLow == other.secondLow
+            && ports == other.ports;
+  }
+
+  @Override
+  public int hashCode() {
+    return hash();
+  }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright (c)  Benedetto Marco Serinelli
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ch.unige.featureextractor.utils.packet;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/*
+ * Open-addressing table of the current flows. The key words are stored inline in a long array and
+ * the slots are probed linearly; a removal shifts back the following entries of the run instead
+ * of leaving a tombstone, so lookups never slow down on long captures.
+ */
+final class FlowTable {
+  private static final int WORDS = 5;
+  private static final int MIN_CAPACITY = 1024;
+  private long[] keys;
+  private int[] hashes;
+  private BasicFlow[] flows;
+  private int mask;
+  private int size;
+
+  FlowTable() {
+    allocate(MIN_CAPACITY);
+  }
+
+  private void allocate(int capacity) {
+    keys = new long[capacity * WORDS];
+    hashes = new int[capacity];
+    flows = new BasicFlow[capacity];
+    mask = capacity - 1;
+  }
+
+  BasicFlow get(FlowKey key) {
+    int slot = find(key, key.hash());
+    return slot >= 0 ? flows[slot] : null;
+  }
+
+  void put(FlowKey key, BasicFlow flow) {
+    int hash = key.hash();
+    int slot = hash & mask;
+    while (flows[slot] != null) {
+      if (hashes[slot] == hash && matches(slot, key)) {
+        flows[slot] = flow;
+        return;
+      }
+      slot = (slot + 1) & mask;
+    }
+    store(slot, hash, key, flow);
+    // keeps the load factor under one half
+    if (++size * 2 > flows.length) {
+      resize(flows.length * 2);
+    }
+  }
+
+  BasicFlow remove(FlowKey key) {
+    int slot = find(key, key.hash());
+    if (slot < 0) {
+      return null;
+    }
+    BasicFlow flow = flows[slot];
+    int hole = slot;
+    int next = (slot + 1) & mask;
+    while (flows[next] != null) {
+      int home = hashes[next] & mask;
+      // moves back the entries whose home slot is not between the hole and their position
+      if (((next - home) & mask) >= ((next - hole) & mask)) {
+        hashes[hole] = hashes[next];
+        flows[hole] = flows[next];
+        System.arraycopy(keys, next * WORDS, keys, hole * WORDS, WORDS);
+        hole = next;
+      }
+      next = (next + 1) & mask;
+    }
+    flows[hole] = null;
+    size--;
+    return flow;
+  }
+
+  List<BasicFlow> values() {
+    List<BasicFlow> values = new ArrayList<>(size);
+    for (BasicFlow flow : flows) {
+      if (flow != null) {
+        values.add(flow);
+      }
+    }
+    return values;
+  }
+
+  int size() {
+    return size;
+  }
+
+  void clear() {
+    allocate(MIN_CAPACITY);
+    size = 0;
+  }
+
+  /*
+   * Checkpoint of the table: every flow is saved with its slot, so the restored table iterates
+   * the flows in the same order as the saved one.
+   */
+  void writeCheckpoint(DataOutput out) throws IOException {
+    out.writeInt(flows.length);
+    out.writeInt(size);
+    ByteBuffer state = ByteBuffer.allocate(BasicFlow.STATE_BYTES);
+    for (int slot = 0; slot < flows.length; slot++) {
+      if (flows[slot] != null) {
+        FlowKey key = flows[slot].tableKey;
+        out.writeInt(slot);
+        out.writeLong(key.firstHigh);
+        out.writeLong(key.firstLow);
+        out.writeLong(key.secondHigh);
+        out.writeLong(key.secondLow);
+        out.writeLong(key.ports);
+        flows[slot].writeState(state, 0);
+        out.write(state.array());
+      }
+    }
+  }
+
+  void readCheckpoint(DataInput in, Supplier<BasicFlow> blankFlows) throws IOException {
+    int capacity = in.readInt();
+    int count = in.readInt();
+    if (capacity < MIN_CAPACITY
+            || Integer.bitCount(capacity) != 1
+            || count < 0
+            || count * 2 > capacity) {
+      throw new IOException("Invalid flow table in checkpoint");
+    }
+    allocate(capacity);
+    size = 0;
+    ByteBuffer state = ByteBuffer.allocate(BasicFlow.STATE_BYTES);
+    for (int i = 0; i < count; i++) {
+      int slot = in.readInt();
+      if (slot < 0 || slot >= capacity || flows[slot] != null) {
+        throw new IOException("Invalid flow slot " + slot + " in checkpoint");
+      }
+      FlowKey key = new FlowKey();
+      key.firstHigh = in.readLong();
+      key.firstLow = in.readLong();
+      key.secondHigh = in.readLong();
+      key.secondLow = in.readLong();
+      key.ports = in.readLong();
+      in.readFully(state.array());
+      BasicFlow flow = blankFlows.get();
+      flow.readState(state, 0);
+      flow.tableKey = key;
+      store(slot, key.hash(), key, flow);
+      size++;
+    }
+  }
+
+  int slotOf(BasicFlow flow) {
+    return find(flow.tableKey, flow.tableKey.hash());
+  }
+
+  BasicFlow flowAt(int slot) {
+    return slot >= 0 && slot < flows.length ? flows[slot] : null;
+  }
+
+  private int find(FlowKey key, int hash) {
+    int slot = hash & mask;
+    while (flows[slot] != null) {
+      if (hashes[slot] == hash && matches(slot, key)) {
+        return slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return -1;
+  }
+
+  private boolean matches(int slot, FlowKey key) {
+    int base = slot * WORDS;
+    return keys[base] == key.firstHigh
+            && keys[base + 1] == key.firstLow
+            && keys[base + 2] == key.secondHigh
+            && keys[base + 3] == key.secondLow
+            && keys[base + 4] == key.ports;
+  }
+
+  private void store(int slot, int hash, FlowKey key, BasicFlow flow) {
+    int base = slot * WORDS;
+    keys[base] = key.firstHigh;
+    keys[base + 1] = key.firstLow;
+    keys[base + 2] = key.secondHigh;
+    keys[base + 3] = key.secondLow;
+    keys[base + 4] = key.ports;
+    hashes[slot] = hash;
+    flows[slot] = flow;
+  }
+
+  private void resize(int capacity) {
+    long[] oldKeys = keys;
+    int[] oldHashes = hashes;
+    BasicFlow[] oldFlows = flows;
+    allocate(capacity);
+    for (int i = 0; i < oldFlows.length; i++) {
+      if (oldFlows[i] != null) {
+        int slot = oldHashes[i] & mask;
+        while (flows[slot] != null) {
+          slot = (slot + 1) & mask;
+        }
+        System.arraycopy(oldKeys, i * WORDS, keys, slot * WORDS, WORDS);
+        hashes[slot] = oldHashes[i];
+        flows[slot] = oldFlows[i];
+      }
+    }
+  }
+}
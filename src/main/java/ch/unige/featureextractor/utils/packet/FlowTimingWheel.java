@@ -0,0 +1,189 @@
+/*
+ * Copyright (c)  Benedetto Marco Serinelli
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ch.unige.featureextractor.utils.packet;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/*
+ * Hashed timing wheel of the flows, driven by the packet timestamps. Each slot covers one tick and
+ * holds an intrusive doubly linked list of flows, so scheduling and cancelling are O(1) and an
+ * advance only visits the slots of the elapsed ticks.
+ * A flow is due when the time is past its expiry time, as in the check done on its own packets;
+ * it may be handed out up to one tick late.
+ */
+final class FlowTimingWheel {
+  private final long tick;
+  private final BasicFlow[] slots;
+  private boolean started = false;
+  private long currentTick;
+  private int size;
+
+  /*
+   * The wheel spans more than the longest delay, so a slot only holds flows of the current round
+   * unless the timestamps of the capture go back in time.
+   */
+  FlowTimingWheel(long maxDelay, long tick) {
+    this.tick = Math.max(1L, tick);
+    this.slots = new BasicFlow[(int) Math.min(1 << 20, maxDelay / this.tick + 2)];
+  }
+
+  void schedule(BasicFlow flow, long expiryTime) {
+    if (flow.wheelSlot >= 0) {
+      cancel(flow);
+    }
+    flow.expiryTime = expiryTime;
+    long flowTick = Math.floorDiv(expiryTime, tick);
+    if (started && flowTick < currentTick) {
+      flowTick = currentTick;
+    }
+    link((int) Math.floorMod(flowTick, (long) slots.length), flow);
+  }
+
+  private void link(int slot, BasicFlow flow) {
+    BasicFlow head = slots[slot];
+    flow.wheelSlot = slot;
+    flow.wheelPrev = null;
+    flow.wheelNext = head;
+    if (head != null) {
+      head.wheelPrev = flow;
+    }
+    slots[slot] = flow;
+    size++;
+  }
+
+  void cancel(BasicFlow flow) {
+    if (flow.wheelSlot < 0) {
+      return;
+    }
+    if (flow.wheelPrev != null) {
+      flow.wheelPrev.wheelNext = flow.wheelNext;
+    } else {
+      slots[flow.wheelSlot] = flow.wheelNext;
+    }
+    if (flow.wheelNext != null) {
+      flow.wheelNext.wheelPrev = flow.wheelPrev;
+    }
+    flow.wheelSlot = -1;
+    flow.wheelPrev = null;
+    flow.wheelNext = null;
+    size--;
+  }
+
+  // Hands out, cancelled, every flow whose expiry time is before the given time
+  void advance(long time, Consumer<BasicFlow> expired) {
+    long targetTick = Math.floorDiv(time, tick);
+    if (!started) {
+      started = true;
+      currentTick = targetTick;
+      return;
+    }
+    if (targetTick <= currentTick) {
+      return;
+    }
+    // a jump longer than the wheel visits each slot once
+    long steps = Math.min(targetTick - currentTick, (long) slots.length);
+    for (long i = 0; i < steps && size > 0; i++) {
+      int slot = (int) Math.floorMod(currentTick + i, (long) slots.length);
+      BasicFlow flow = slots[slot];
+      while (flow != null) {
+        BasicFlow next = flow.wheelNext;
+        if (flow.expiryTime < time) {
+          cancel(flow);
+          expired.accept(flow);
+        }
+        flow = next;
+      }
+    }
+    currentTick = targetTick;
+  }
+
+  void clear() {
+    for (int i = 0; i < slots.length; i++) {
+      BasicFlow flow = slots[i];
+      while (flow != null) {
+        BasicFlow next = flow.wheelNext;
+        flow.wheelSlot = -1;
+        flow.wheelPrev = null;
+        flow.wheelNext = null;
+        flow = next;
+      }
+      slots[i] = null;
+    }
+    size = 0;
+  }
+
+  /*
+   * Checkpoint of the wheel: the flows of each slot are saved in list order, as slots of the
+   * table, so the restored wheel hands them out in the same order as the saved one.
+   */
+  void writeCheckpoint(DataOutput out, FlowTable table) throws IOException {
+    out.writeInt(slots.length);
+    out.writeBoolean(started);
+    out.writeLong(currentTick);
+    for (int slot = 0; slot < slots.length; slot++) {
+      int count = 0;
+      for (BasicFlow flow = slots[slot]; flow != null; flow = flow.wheelNext) {
+        count++;
+      }
+      if (count > 0) {
+        out.writeInt(slot);
+        out.writeInt(count);
+        for (BasicFlow flow = slots[slot]; flow != null; flow = flow.wheelNext) {
+          out.writeInt(table.slotOf(flow));
+          out.writeLong(flow.expiryTime);
+        }
+      }
+    }
+    out.writeInt(-1);
+  }
+
+  void readCheckpoint(DataInput in, FlowTable table) throws IOException {
+    if (in.readInt() != slots.length) {
+      throw new IOException("Checkpoint of another flow timeout");
+    }
+    clear();
+    started = in.readBoolean();
+    currentTick = in.readLong();
+    for (int slot = in.readInt(); slot >= 0; slot = in.readInt()) {
+      int count = in.readInt();
+      if (slot >= slots.length || count <= 0) {
+        throw new IOException("Invalid wheel slot " + slot + " in checkpoint");
+      }
+      BasicFlow[] list = new BasicFlow[count];
+      for (int i = 0; i < count; i++) {
+        list[i] = table.flowAt(in.readInt());
+        if (list[i] == null || list[i].wheelSlot >= 0) {
+          throw new IOException("Invalid wheel entry in checkpoint");
+        }
+        list[i].expiryTime = in.readLong();
+      }
+      // each flow is linked at the head of the list
+      for (int i = count - 1; i >= 0; i--) {
+        link(slot, list[i]);
+      }
+    }
+  }
+
+  int size() {
+    return size;
+  }
+}
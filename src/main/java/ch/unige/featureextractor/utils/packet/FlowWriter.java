@@ -0,0 +1,187 @@
+/*
+ * Copyright (c)  Benedetto Marco Serinelli
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ch.unige.featureextractor.utils.packet;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.util.List;
+import java.util.ResourceBundle;
+
+/*
+ * Writes each finished flow to the CSV of every extractor of the capture, so a flow leaves the
+ * memory once it is finished instead of waiting for the end of the file.
+ * The shards of a ShardedFlowGenerator call it from their own threads: each thread encodes the
+ * CSV rows with its own CsvEncoders and only the copy into the channels is synchronized, the
+ * Arrow outputs are filled while holding the lock.
+ */
+public class FlowWriter implements FlowGenListener {
+  private static final Logger logger = LogManager.getLogger(FlowWriter.class);
+  private final ColumnPlan[] plans;
+  private final CsvChannel[] channels;
+  private final ArrowFlowWriter[] arrows;
+  private final boolean autoFlush;
+  private final ThreadLocal<CsvEncoder[]> encoders = ThreadLocal.withInitial(this::newEncoders);
+  private long total;
+
+  public FlowWriter(List<ExtractorOutput> outputs) throws IOException {
+    this(outputs, false);
+  }
+
+  // A resumed output already holds its header and the rows written before the checkpoint
+  public FlowWriter(List<ExtractorOutput> outputs, boolean resumed) throws IOException {
+    this.plans = new ColumnPlan[outputs.size()];
+    this.channels = new CsvChannel[outputs.size()];
+    this.arrows = new ArrowFlowWriter[outputs.size()];
+    this.autoFlush = false;
+    try {
+      for (int i = 0; i < channels.length; i++) {
+        ExtractorOutput output = outputs.get(i);
+        plans[i] = ColumnPlan.of(output.getRb());
+        if (PacketLoader.OUTPUT_FORMAT_ARROW.equals(output.getFormat())) {
+          int batchRows =
+                  PacketLoader.getIntProperty(output.getRb(), "output.arrow.batch.rows", 8192);
+          arrows[i] = new ArrowFlowWriter(output.getFile(), plans[i], batchRows);
+        } else {
+          channels[i] = openChannel(output);
+          if (!resumed) {
+            channels[i].writeLine(FlowFeature.getHeader(output.getRb()));
+          }
+        }
+      }
+    } catch (IOException e) {
+      close();
+      throw e;
+    }
+  }
+
+  // Writes the CSV rows of one extractor to a stream, each row is handed over once written
+  public FlowWriter(ResourceBundle rb, OutputStream stream) throws IOException {
+    this.plans = new ColumnPlan[] {ColumnPlan.of(rb)};
+    this.channels = new CsvChannel[] {new CsvChannel(Channels.newChannel(stream))};
+    this.arrows = new ArrowFlowWriter[1];
+    this.autoFlush = true;
+    try {
+      channels[0].writeLine(FlowFeature.getHeader(rb));
+    } catch (IOException e) {
+      close();
+      throw e;
+    }
+  }
+
+  private static CsvChannel openChannel(ExtractorOutput output) throws IOException {
+    if (output.getCompression() == null) {
+      return new CsvChannel(output.getFile());
+    }
+    int blockKb =
+            PacketLoader.getIntProperty(output.getRb(), "csv.output.compression.block.kb", 1024);
+    int blockSize = Math.max(1, blockKb) * 1024;
+    return new CsvChannel(
+            new BlockCompressedChannel(output.getFile(), output.getCompression(), blockSize));
+  }
+
+  private CsvEncoder[] newEncoders() {
+    CsvEncoder[] created = new CsvEncoder[channels.length];
+    for (int i = 0; i < created.length; i++) {
+      created[i] = new CsvEncoder();
+    }
+    return created;
+  }
+
+  @Override
+  public void onFlowGenerated(BasicFlow flow) {
+    // flows made of a single packet are not written, as in the end-of-file dump
+    if (flow.packetCount() <= 1) {
+      return;
+    }
+    CsvEncoder[] rows = encoders.get();
+    for (int i = 0; i < rows.length; i++) {
+      if (channels[i] != null) {
+        rows[i].encode(flow, plans[i]);
+      }
+    }
+    synchronized (this) {
+      try {
+        for (int i = 0; i < rows.length; i++) {
+          if (channels[i] != null) {
+            channels[i].write(rows[i]);
+            if (autoFlush) {
+              channels[i].flush();
+            }
+          } else {
+            arrows[i].write(flow);
+          }
+        }
+        total++;
+      } catch (IOException e) {
+        logger.error("Error to write flow", e);
+      }
+    }
+  }
+
+  // Writes the rows so far to the CSV outputs, the compressed ones ending their current block
+  public synchronized void flush() {
+    for (CsvChannel channel : channels) {
+      if (channel != null) {
+        try {
+          channel.drain();
+        } catch (IOException e) {
+          logger.error("Error to flush output", e);
+        }
+      }
+    }
+  }
+
+  // Waits until the rows written so far are in the CSV files, used by the checkpoints
+  public synchronized void sync() throws IOException {
+    for (CsvChannel channel : channels) {
+      if (channel != null) {
+        channel.sync();
+      }
+    }
+  }
+
+  public synchronized long getTotal() {
+    return total;
+  }
+
+  public synchronized void close() {
+    for (CsvChannel channel : channels) {
+      if (channel != null) {
+        try {
+          channel.close();
+        } catch (IOException e) {
+          logger.error("Error to close output", e);
+        }
+      }
+    }
+    for (ArrowFlowWriter arrow : arrows) {
+      if (arrow != null) {
+        try {
+          arrow.close();
+        } catch (IOException e) {
+          logger.error("Error to close output", e);
+        }
+      }
+    }
+  }
+}
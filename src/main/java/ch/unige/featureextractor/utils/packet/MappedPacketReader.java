@@ -0,0 +1,307 @@
+/*
+ * Copyright (c)  Benedetto Marco Serinelli
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ch.unige.featureextractor.utils.packet;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jnetpcap.PcapClosedException;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/*
+ * Reader engine that maps the capture with FileChannel.map and parses the pcap records, or the
+ * pcapng blocks, without jnetpcap, so no native library is needed for offline files.
+ * Files larger than a mapping are read through a sliding window that is remapped on demand.
+ */
+public class MappedPacketReader implements PacketSource {
+  private static final Logger logger = LogManager.getLogger(MappedPacketReader.class);
+  static final int PCAP_MAGIC = 0xA1B2C3D4;
+  static final int PCAP_MAGIC_SWAPPED = 0xD4C3B2A1;
+  static final int PCAP_NANO_MAGIC = 0xA1B23C4D;
+  static final int PCAP_NANO_MAGIC_SWAPPED = 0x4D3CB2A1;
+  static final int GLOBAL_HEADER_LENGTH = 24;
+  static final int RECORD_HEADER_LENGTH = 16;
+  static final int MAX_RECORD_LENGTH = 262144;
+  private static final long WINDOW_SIZE = 256L * 1024 * 1024;
+  private static final int BLOCK_END = -1;
+  private static final int BLOCK_SKIPPED = 0;
+  private static final int BLOCK_PACKET = 1;
+  private final boolean readIP6;
+  private final boolean readIP4;
+  private final String file;
+  private final RandomAccessFile raf;
+  private final FileChannel channel;
+  private final long fileSize;
+  private boolean littleEndian;
+  private int linkType;
+  // fraction of second of a record per microsecond, 1000 in a nanosecond pcap
+  private long fractionPerMicro = 1L;
+  // null for a classic pcap
+  private PcapngParser pcapng;
+  private MappedByteBuffer window;
+  private long windowStart;
+  private long position;
+  private long firstPacket;
+  private long lastPacket;
+  // null when the content hash is not needed
+  private ContentDigest digest;
+
+  public MappedPacketReader(String filename, boolean readip4, boolean readip6) throws IOException {
+    super();
+    this.readIP4 = readip4;
+    this.readIP6 = readip6;
+    this.file = filename;
+    logger.info(filename);
+    this.raf = new RandomAccessFile(filename, "r");
+    this.channel = raf.getChannel();
+    this.fileSize = channel.size();
+    try {
+      readGlobalHeader();
+    } catch (IOException e) {
+      close();
+      throw e;
+    }
+  }
+
+  private void readGlobalHeader() throws IOException {
+    if (fileSize < PcapngParser.BLOCK_HEADER_LENGTH) {
+      throw new IOException("File too short to be a pcap [" + file + "]");
+    }
+    map(0);
+    String format = CaptureFormat.of(window, 0);
+    int magic = window.getInt(0);
+    if (CaptureFormat.PCAPNG.equals(format)) {
+      // the blocks are parsed from the section header on
+      pcapng = new PcapngParser();
+      position = 0;
+      return;
+    } else if (format == null) {
+      throw new IOException(String.format("Unsupported pcap magic 0x%08X [%s]", magic, file));
+    } else if (fileSize < GLOBAL_HEADER_LENGTH) {
+      throw new IOException("File too short to be a pcap [" + file + "]");
+    }
+    littleEndian = CaptureFormat.isLittleEndian(magic);
+    fractionPerMicro = CaptureFormat.PCAP_NANO.equals(format) ? 1000L : 1L;
+    linkType = readInt(20) & 0x0FFFFFFF;
+    if (!PacketDecoder.isSupportedLinkType(linkType)) {
+      throw new IOException("Unsupported link type " + linkType + " [" + file + "]");
+    }
+    position = GLOBAL_HEADER_LENGTH;
+  }
+
+  @Override
+  public BasicPacketInfo nextPacket() {
+    BasicPacketInfo packetInfo = new BasicPacketInfo();
+    return nextPacket(packetInfo) ? packetInfo : null;
+  }
+
+  @Override
+  public boolean nextPacket(BasicPacketInfo packetInfo) {
+    if (pcapng != null) {
+      return nextBlockPacket(packetInfo);
+    }
+    if (position + RECORD_HEADER_LENGTH > fileSize) {
+      logger.debug("Read All packets on {}", file);
+      close();
+      throw new PcapClosedException();
+    }
+    boolean valid;
+    try {
+      ensureMapped(position, RECORD_HEADER_LENGTH);
+      int header = (int) (position - windowStart);
+      long seconds = readInt(header) & 0xFFFFFFFFL;
+      long micros = (readInt(header + 4) & 0xFFFFFFFFL) / fractionPerMicro;
+      int capturedLength = readInt(header + 8);
+      if (capturedLength < 0
+              || capturedLength > MAX_RECORD_LENGTH
+              || position + RECORD_HEADER_LENGTH + capturedLength > fileSize) {
+        logger.error("Truncated or corrupted record at offset {} on {}", position, file);
+        close();
+        throw new PcapClosedException();
+      }
+      ensureMapped(position, RECORD_HEADER_LENGTH + capturedLength);
+      int data = (int) (position - windowStart) + RECORD_HEADER_LENGTH;
+      position += RECORD_HEADER_LENGTH + capturedLength;
+      if (digest != null) {
+        digest.follow(window, windowStart, position);
+      }
+
+      long timestamp = seconds * 1000000L + micros;
+      valid =
+              PacketDecoder.decode(
+                      window,
+                      data,
+                      capturedLength,
+                      linkType,
+                      timestamp,
+                      readIP4,
+                      readIP6,
+                      packetInfo);
+      if (valid) {
+        if (this.firstPacket == 0L) this.firstPacket = timestamp / 1000L;
+        this.lastPacket = timestamp / 1000L;
+      }
+    } catch (IOException e) {
+      logger.error("Error to map " + file, e);
+      close();
+      throw new PcapClosedException();
+    }
+    return valid;
+  }
+
+  // Skips the blocks that are not packets, a packet block is decoded as a record
+  private boolean nextBlockPacket(BasicPacketInfo packetInfo) {
+    try {
+      for (int block = readBlock(); block != BLOCK_END; block = readBlock()) {
+        if (block == BLOCK_PACKET) {
+          long timestamp = pcapng.packetTimestamp;
+          boolean valid =
+                  PacketDecoder.decode(
+                          window,
+                          pcapng.packetOffset,
+                          pcapng.packetLength,
+                          pcapng.packetLinkType,
+                          timestamp,
+                          readIP4,
+                          readIP6,
+                          packetInfo);
+          if (valid) {
+            if (this.firstPacket == 0L) this.firstPacket = timestamp / 1000L;
+            this.lastPacket = timestamp / 1000L;
+          }
+          return valid;
+        }
+      }
+    } catch (IOException e) {
+      logger.error("Truncated or corrupted block at offset " + position + " on " + file, e);
+      close();
+      throw new PcapClosedException();
+    }
+    logger.debug("Read All packets on {}", file);
+    close();
+    throw new PcapClosedException();
+  }
+
+  // Reads the block at the position, the packet of a BLOCK_PACKET is left in pcapng
+  private int readBlock() throws IOException {
+    if (position + PcapngParser.BLOCK_HEADER_LENGTH > fileSize) {
+      return BLOCK_END;
+    }
+    ensureMapped(position, PcapngParser.BLOCK_HEADER_LENGTH);
+    int type = pcapng.blockType(window, (int) (position - windowStart));
+    int length = pcapng.blockLength(window, (int) (position - windowStart));
+    if (position + length > fileSize) {
+      throw new IOException("Block of " + length + " bytes cut by the end of the file");
+    }
+    int block = BLOCK_SKIPPED;
+    if (PcapngParser.isParsed(type)) {
+      if (length > PcapngParser.MAX_BLOCK_LENGTH) {
+        throw new IOException("Block of " + length + " bytes");
+      }
+      ensureMapped(position, length);
+      if (pcapng.readBlock(window, (int) (position - windowStart), type, length)) {
+        block = BLOCK_PACKET;
+      }
+    }
+    position += length;
+    if (digest != null) {
+      digest.follow(window, windowStart, position);
+    }
+    return block;
+  }
+
+  private void ensureMapped(long offset, int length) throws IOException {
+    if (window == null
+            || offset < windowStart
+            || offset + length > windowStart + window.limit()) {
+      map(offset);
+    }
+  }
+
+  private void map(long offset) throws IOException {
+    if (digest != null) {
+      // the bytes before the offset are digested while they are still mapped
+      digest.update(window, windowStart, offset);
+    }
+    windowStart = offset;
+    long size = Math.min(WINDOW_SIZE, fileSize - offset);
+    window = channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+    window.order(ByteOrder.BIG_ENDIAN);
+  }
+
+  private int readInt(int index) {
+    int value = window.getInt(index);
+    return littleEndian ? Integer.reverseBytes(value) : value;
+  }
+
+  @Override
+  public void close() {
+    window = null;
+    try {
+      channel.close();
+      raf.close();
+    } catch (IOException e) {
+      logger.debug(e.getMessage());
+    }
+  }
+
+  // The SHA-256 of the capture is computed by digest along the reading
+  void setDigest(ContentDigest digest) {
+    this.digest = digest;
+  }
+
+  // Offset of the next record, kept by the checkpoints with the timestamps read so far
+  long getPosition() {
+    return position;
+  }
+
+  void seek(long position, long firstPacket, long lastPacket) throws IOException {
+    if (position < (pcapng != null ? 0 : GLOBAL_HEADER_LENGTH) || position > fileSize) {
+      throw new IOException("Offset " + position + " out of [" + file + "]");
+    }
+    if (pcapng != null) {
+      // the interfaces of the section are read again from the blocks before the offset
+      this.position = 0;
+      int block = BLOCK_SKIPPED;
+      while (this.position < position && block != BLOCK_END) {
+        block = readBlock();
+      }
+      if (this.position != position) {
+        throw new IOException("Offset " + position + " is not a block of [" + file + "]");
+      }
+    }
+    this.position = position;
+    this.firstPacket = firstPacket;
+    this.lastPacket = lastPacket;
+  }
+
+  @Override
+  public long getFirstPacket() {
+    return firstPacket;
+  }
+
+  @Override
+  public long getLastPacket() {
+    return lastPacket;
+  }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright (c)  Benedetto Marco Serinelli
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ch.unige.featureextractor.utils.packet;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ResourceBundle;
+
+/*
+ * FlowGenerator keeping the current flows in an OffHeapFlowStore: a packet reads the state of its
+ * flow in a reused BasicFlow, updates it and writes it back, so the heap only holds a few objects
+ * whatever the number of concurrent flows.
+ * A few slots are checked on every packet to finish the flows older than the flow timeout.
+ * The BasicFlow given to the listener is reused once onFlowGenerated returns.
+ */
+public class OffHeapFlowGenerator implements FlowProcessor {
+  private static final Logger logger = LogManager.getLogger(OffHeapFlowGenerator.class);
+  private static final int SWEEP_SLOTS = 2;
+  private final boolean bidirectional;
+  private final long flowTimeOut;
+  private final long flowActivityTimeOut;
+  private final OffHeapFlowStore store;
+  private final FlowKey lookupKey = new FlowKey();
+  private final BasicFlow view;
+  private final List<BasicFlow> finishedFlows = new ArrayList<>();
+  private FlowGenListener mListener;
+  private int sweepCursor = 0;
+  private boolean fullWarned = false;
+
+  public OffHeapFlowGenerator(
+          boolean bidirectional, long flowTimeout, long activityTimeout, long storeBytes) {
+    super();
+    this.bidirectional = bidirectional;
+    this.flowTimeOut = flowTimeout;
+    this.flowActivityTimeOut = activityTimeout;
+    this.store = new OffHeapFlowStore(storeBytes);
+    this.view = blankFlow();
+    logger.debug("Off-heap flow store of {} slots", store.capacity());
+  }
+
+  private BasicFlow blankFlow() {
+    return new BasicFlow(bidirectional, new BasicPacketInfo());
+  }
+
+  @Override
+  public void addFlowListener(FlowGenListener listener) {
+    mListener = listener;
+  }
+
+  @Override
+  public void addPacket(BasicPacketInfo packet) {
+    if (packet == null) {
+      return;
+    }
+    long currentTimestamp = packet.getTimeStamp();
+    sweep(currentTimestamp, SWEEP_SLOTS);
+
+    lookupKey.set(packet);
+    int slot = store.find(lookupKey);
+    if (slot >= 0) {
+      BasicFlow flow = view;
+      store.readFlow(slot, flow);
+      if ((currentTimestamp - flow.getFlowStartTime()) > flowTimeOut) {
+        store.remove(slot);
+        finishFlow(flow);
+        startFlow(packet);
+      } else if (packet.hasFlagFIN() || packet.hasFlagRST()) {
+        flow.addPacket(packet);
+        store.remove(slot);
+        finishFlow(flow);
+      } else {
+        flow.updateActiveIdleTime(currentTimestamp, this.flowActivityTimeOut);
+        flow.addPacket(packet);
+        store.writeFlow(slot, flow);
+      }
+    } else {
+      startFlow(packet);
+    }
+  }
+
+  private void startFlow(BasicPacketInfo packet) {
+    BasicFlow flow = new BasicFlow(bidirectional, packet);
+    int slot = store.insert(lookupKey);
+    if (slot < 0) {
+      makeRoom(packet.getTimeStamp());
+      slot = store.insert(lookupKey);
+    }
+    store.writeFlow(slot, flow);
+  }
+
+  /*
+   * A full store first finishes every flow past its timeout; if none is, the flows found from the
+   * sweep position are finished early, as the store size is the hard bound of the generator.
+   */
+  private void makeRoom(long currentTimestamp) {
+    sweep(currentTimestamp, store.capacity());
+    int target = store.capacity() - (store.capacity() >>> 2) - 1;
+    if (store.size() <= target) {
+      return;
+    }
+    if (!fullWarned) {
+      fullWarned = true;
+      logger.warn("Off-heap flow store full ({} flows), flows are finished early", store.size());
+    }
+    while (store.size() > target) {
+      if (store.isUsed(sweepCursor)) {
+        store.readFlow(sweepCursor, view);
+        store.remove(sweepCursor);
+        finishFlow(view);
+      } else {
+        sweepCursor = (sweepCursor + 1) % store.capacity();
+      }
+    }
+  }
+
+  private void sweep(long currentTimestamp, int slots) {
+    for (int i = 0; i < slots && store.size() > 0; i++) {
+      int slot = sweepCursor;
+      if (store.isUsed(slot) && store.flowStartTime(slot) + flowTimeOut < currentTimestamp) {
+        store.readFlow(slot, view);
+        // the backward shift may move another flow into this slot, it is checked next
+        store.remove(slot);
+        finishFlow(view);
+      } else {
+        sweepCursor = (slot + 1) % store.capacity();
+      }
+    }
+  }
+
+  private void finishFlow(BasicFlow flow) {
+    if (mListener != null) {
+      mListener.onFlowGenerated(flow);
+    } else {
+      finishedFlows.add(copyOf(flow));
+    }
+  }
+
+  private BasicFlow copyOf(BasicFlow flow) {
+    ByteBuffer state = ByteBuffer.allocate(BasicFlow.STATE_BYTES);
+    flow.writeState(state, 0);
+    BasicFlow copy = blankFlow();
+    copy.readState(state, 0);
+    return copy;
+  }
+
+  @Override
+  public void finishCurrentFlows() {
+    for (int slot = 0; slot < store.capacity(); slot++) {
+      if (store.isUsed(slot)) {
+        store.readFlow(slot, view);
+        finishFlow(view);
+      }
+    }
+    store.clear();
+  }
+
+  @Override
+  public long dumpLabeledCurrentFlow(String fileFullPath, String header, ResourceBundle rb) {
+    if (fileFullPath == null || header == null) {
+      String ex = String.format("fullFilePath=%s,header=%s", fileFullPath, header);
+      throw new IllegalArgumentException(ex);
+    }
+
+    File file = new File(fileFullPath);
+    CsvChannel output = null;
+    long total = 0;
+
+    try {
+      output = new CsvChannel(file);
+      output.writeLine(header);
+      ColumnPlan plan = ColumnPlan.of(rb);
+      CsvEncoder row = new CsvEncoder();
+      for (BasicFlow flow : finishedFlows) {
+        total += writeFlow(output, row, flow, plan);
+      }
+      for (int slot = 0; slot < store.capacity(); slot++) {
+        if (store.isUsed(slot)) {
+          store.readFlow(slot, view);
+          total += writeFlow(output, row, view, plan);
+        }
+      }
+    } catch (IOException e) {
+      logger.debug(e.getMessage());
+    } finally {
+      try {
+        if (output != null) {
+          output.close();
+        }
+      } catch (IOException e) {
+        logger.debug(e.getMessage());
+      }
+    }
+    return total;
+  }
+
+  private int writeFlow(CsvChannel output, CsvEncoder row, BasicFlow flow, ColumnPlan plan)
+          throws IOException {
+    if (flow.packetCount() <= 1) {
+      return 0;
+    }
+    row.encode(flow, plan);
+    output.write(row);
+    return 1;
+  }
+
+  @Override
+  public void close() {
+    store.release();
+  }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (c)  Benedetto Marco Serinelli
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ch.unige.featureextractor.utils.packet;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/*
+ * Open-addressing table of flows kept in direct memory, outside of the garbage collected heap.
+ * A slot has a fixed layout: a used mark, the key hash, the FlowKey words and the flow state
+ * written by BasicFlow.writeState. The memory is split in segments of at most 1 GB, each one a
+ * direct ByteBuffer, and the capacity is the largest power of two of slots fitting the size given.
+ */
+final class OffHeapFlowStore {
+  private static final int HEADER_BYTES = 8;
+  private static final int KEY_BYTES = 40;
+  private static final int STATE_OFFSET = HEADER_BYTES + KEY_BYTES;
+  static final int SLOT_BYTES = STATE_OFFSET + BasicFlow.STATE_BYTES;
+  private static final int MAX_SEGMENT_BYTES = 1 << 30;
+  private static final int MIN_CAPACITY = 1024;
+  private ByteBuffer[] segments;
+  private final int segmentShift;
+  private final int segmentMask;
+  private final int mask;
+  private final int maxSize;
+  private int size;
+
+  OffHeapFlowStore(long bytes) {
+    long slots = Math.max(MIN_CAPACITY, Math.min(1L << 30, bytes / SLOT_BYTES));
+    int capacity = Integer.highestOneBit((int) slots);
+    int slotsPerSegment = Math.min(capacity, Integer.highestOneBit(MAX_SEGMENT_BYTES / SLOT_BYTES));
+    segmentShift = Integer.numberOfTrailingZeros(slotsPerSegment);
+    segmentMask = slotsPerSegment - 1;
+    mask = capacity - 1;
+    // linear probing stays short under three quarters of load
+    maxSize = capacity - (capacity >>> 2);
+    segments = new ByteBuffer[capacity / slotsPerSegment];
+    for (int i = 0; i < segments.length; i++) {
+      segments[i] = ByteBuffer.allocateDirect(slotsPerSegment * SLOT_BYTES);
+      segments[i].order(ByteOrder.nativeOrder());
+    }
+  }
+
+  int find(FlowKey key) {
+    int hash = key.hash();
+    int slot = hash & mask;
+    while (isUsed(slot)) {
+      if (segment(slot).getInt(offset(slot) + 4) == hash && matches(slot, key)) {
+        return slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return -1;
+  }
+
+  // Slot of a key that is not in the store, -1 when the store is full
+  int insert(FlowKey key) {
+    if (size >= maxSize) {
+      return -1;
+    }
+    int hash = key.hash();
+    int slot = hash & mask;
+    while (isUsed(slot)) {
+      slot = (slot + 1) & mask;
+    }
+    ByteBuffer buf = segment(slot);
+    int base = offset(slot);
+    buf.putInt(base, 1);
+    buf.putInt(base + 4, hash);
+    buf.putLong(base + 8, key.firstHigh);
+    buf.putLong(base + 16, key.firstLow);
+    buf.putLong(base + 24, key.secondHigh);
+    buf.putLong(base + 32, key.secondLow);
+    buf.putLong(base + 40, key.ports);
+    size++;
+    return slot;
+  }
+
+  // Backward shift of the following entries of the run, no tombstone is left
+  void remove(int slot) {
+    int hole = slot;
+    int next = (slot + 1) & mask;
+    while (isUsed(next)) {
+      int home = segment(next).getInt(offset(next) + 4) & mask;
+      if (((next - home) & mask) >= ((next - hole) & mask)) {
+        copySlot(next, hole);
+        hole = next;
+      }
+      next = (next + 1) & mask;
+    }
+    segment(hole).putInt(offset(hole), 0);
+    size--;
+  }
+
+  boolean isUsed(int slot) {
+    return segment(slot).getInt(offset(slot)) != 0;
+  }
+
+  void readFlow(int slot, BasicFlow flow) {
+    flow.readState(segment(slot), offset(slot) + STATE_OFFSET);
+  }
+
+  void writeFlow(int slot, BasicFlow flow) {
+    flow.writeState(segment(slot), offset(slot) + STATE_OFFSET);
+  }
+
+  long flowStartTime(int slot) {
+    return BasicFlow.readFlowStartTime(segment(slot), offset(slot) + STATE_OFFSET);
+  }
+
+  int capacity() {
+    return mask + 1;
+  }
+
+  int size() {
+    return size;
+  }
+
+  void clear() {
+    for (int slot = 0; slot <= mask; slot++) {
+      segment(slot).putInt(offset(slot), 0);
+    }
+    size = 0;
+  }
+
+  // The direct buffers are freed by the garbage collector once no longer referenced
+  void release() {
+    segments = new ByteBuffer[0];
+    size = 0;
+  }
+
+  private boolean matches(int slot, FlowKey key) {
+    ByteBuffer buf = segment(slot);
+    int base = offset(slot);
+    return buf.getLong(base + 8) == key.firstHigh
+            && buf.getLong(base + 16) == key.firstLow
+            && buf.getLong(base + 24) == key.secondHigh
+            && buf.getLong(base + 32) == key.secondLow
+            && buf.getLong(base + 40) == key.ports;
+  }
+
+  private void copySlot(int from, int to) {
+    ByteBuffer source = segment(from);
+    ByteBuffer target = segment(to);
+    int sourceBase = offset(from);
+    int targetBase = offset(to);
+    // whole longs, the slot size is a multiple of 8
+    for (int i = 0; i < SLOT_BYTES; i += 8) {
+      target.putLong(targetBase + i, source.getLong(sourceBase + i));
+    }
+  }
+
+  private ByteBuffer segment(int slot) {
+    return segments[slot >>> segmentShift];
+  }
+
+  private int offset(int slot) {
+    return (slot & segmentMask) * SLOT_BYTES;
+  }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c)  Benedetto Marco Serinelli
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ch.unige.featureextractor.utils.packet;
+
+import java.nio.ByteBuffer;
+
+/*
+ * Primitive running statistics of a flow feature: count, sum, min, max and the Welford mean and
+ * sum of squared deviations. The updates are the ones of commons-math SummaryStatistics, so the
+ * results are the same values, without the sub-aggregators nobody reads.
+ */
+public final class OnlineStatistics {
+  private long n = 0;
+  private double sum = 0d;
+  private double min = Double.NaN;
+  private double max = Double.NaN;
+  private double mean = 0d;
+  private double m2 = 0d;
+
+  public void addValue(double value) {
+    sum += value;
+    if (value < min || Double.isNaN(min)) {
+      min = value;
+    }
+    if (value > max || Double.isNaN(max)) {
+      max = value;
+    }
+    n++;
+    double dev = value - mean;
+    double nDev = dev / n;
+    mean += nDev;
+    m2 += ((double) n - 1) * dev * nDev;
+  }
+
+  // Chan et al. pairwise update, to combine the statistics of two parts of a flow
+  public void merge(OnlineStatistics other) {
+    if (other.n == 0) {
+      return;
+    }
+    if (n == 0) {
+      n = other.n;
+      sum = other.sum;
+      min = other.min;
+      max = other.max;
+      mean = other.mean;
+      m2 = other.m2;
+      return;
+    }
+    double total = (double) n + other.n;
+    double delta = other.mean - mean;
+    mean += delta * other.n / total;
+    m2 += other.m2 + delta * delta * n * other.n / total;
+    sum += other.sum;
+    min = Math.min(min, other.min);
+    max = Math.max(max, other.max);
+    n += other.n;
+  }
+
+  static final int BYTES = 48;
+
+  void writeTo(ByteBuffer buf, int offset) {
+    buf.putLong(offset, n);
+    buf.putDouble(offset + 8, sum);
+    buf.putDouble(offset + 16, min);
+    buf.putDouble(offset + 24, max);
+    buf.putDouble(offset + 32, mean);
+    buf.putDouble(offset + 40, m2);
+  }
+
+  void readFrom(ByteBuffer buf, int offset) {
+    n = buf.getLong(offset);
+    sum = buf.getDouble(offset + 8);
+    min = buf.getDouble(offset + 16);
+    max = buf.getDouble(offset + 24);
+    mean = buf.getDouble(offset + 32);
+    m2 = buf.getDouble(offset + 40);
+  }
+
+  public long getN() {
+    return n;
+  }
+
+  public double getSum() {
+    return sum;
+  }
+
+  public double getMin() {
+    return min;
+  }
+
+  public double getMax() {
+    return max;
+  }
+
+  public double getMean() {
+    return n == 0 ? Double.NaN : mean;
+  }
+
+  // Bias-corrected sample variance
+  public double getVariance() {
+    if (n == 0) {
+      return Double.NaN;
+    }
+    return n == 1 ? 0d : m2 / (n - 1d);
+  }
+
+  public double getStandardDeviation() {
+    if (n == 0) {
+      return Double.NaN;
+    }
+    return n == 1 ? 0d : Math.sqrt(getVariance());
+  }
+}
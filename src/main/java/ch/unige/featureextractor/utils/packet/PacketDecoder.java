@@ -0,0 +1,230 @@
+/*
+ * Copyright (c)  Benedetto Marco Serinelli
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ch.unige.featureextractor.utils.packet;
+
+import java.nio.ByteBuffer;
+
+/*
+ * Pure-Java decoder of the link, network and transport headers of a captured frame.
+ * Multi-byte header fields are network order, so the buffer must be in big-endian order.
+ * The decoder fills a caller-owned BasicPacketInfo and does not allocate.
+ */
+final class PacketDecoder {
+  static final int LINKTYPE_NULL = 0;
+  static final int LINKTYPE_ETHERNET = 1;
+  static final int LINKTYPE_RAW = 101;
+  static final int LINKTYPE_LOOP = 108;
+  static final int LINKTYPE_LINUX_SLL = 113;
+  static final int LINKTYPE_IPV4 = 228;
+  static final int LINKTYPE_IPV6 = 229;
+
+  private static final int ETHERTYPE_IPV4 = 0x0800;
+  private static final int ETHERTYPE_IPV6 = 0x86DD;
+  private static final int ETHERTYPE_VLAN = 0x8100;
+  private static final int ETHERTYPE_QINQ = 0x88A8;
+  private static final int ETHERTYPE_VLAN_DOUBLE = 0x9100;
+
+  private static final int PROTO_TCP = 6;
+  private static final int PROTO_UDP = 17;
+
+  private PacketDecoder() {
+  }
+
+  static boolean isSupportedLinkType(int linkType) {
+    switch (linkType) {
+      case LINKTYPE_NULL:
+      case LINKTYPE_ETHERNET:
+      case LINKTYPE_RAW:
+      case LINKTYPE_LOOP:
+      case LINKTYPE_LINUX_SLL:
+      case LINKTYPE_IPV4:
+      case LINKTYPE_IPV6:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /*
+   * Decodes the frame stored in buf[offset, offset + length) into packetInfo. Returns false when
+   * the frame does not carry an IP version enabled by readIP4/readIP6, like the jnetpcap reader.
+   */
+  static boolean decode(
+          ByteBuffer buf,
+          int offset,
+          int length,
+          int linkType,
+          long timestampMicros,
+          boolean readIP4,
+          boolean readIP6,
+          BasicPacketInfo packetInfo) {
+    packetInfo.reset();
+    int end = offset + length;
+    int ipOffset;
+    int etherType;
+
+    switch (linkType) {
+      case LINKTYPE_ETHERNET:
+        if (length < 14) {
+          return false;
+        }
+        etherType = u16(buf, offset + 12);
+        ipOffset = offset + 14;
+        while ((etherType == ETHERTYPE_VLAN
+                || etherType == ETHERTYPE_QINQ
+                || etherType == ETHERTYPE_VLAN_DOUBLE)
+                && ipOffset + 4 <= end) {
+          etherType = u16(buf, ipOffset + 2);
+          ipOffset += 4;
+        }
+        break;
+      case LINKTYPE_LINUX_SLL:
+        if (length < 16) {
+          return false;
+        }
+        etherType = u16(buf, offset + 14);
+        ipOffset = offset + 16;
+        break;
+      case LINKTYPE_NULL:
+      case LINKTYPE_LOOP:
+        // the 4 bytes address family is in host order, the IP version nibble is more reliable
+        ipOffset = offset + 4;
+        etherType = ipOffset < end ? etherTypeOfVersion(buf.get(ipOffset)) : -1;
+        break;
+      case LINKTYPE_RAW:
+      case LINKTYPE_IPV4:
+      case LINKTYPE_IPV6:
+        ipOffset = offset;
+        etherType = ipOffset < end ? etherTypeOfVersion(buf.get(ipOffset)) : -1;
+        break;
+      default:
+        return false;
+    }
+
+    if (etherType == ETHERTYPE_IPV4 && readIP4) {
+      return decodeIpv4(buf, ipOffset, end, timestampMicros, packetInfo);
+    } else if (etherType == ETHERTYPE_IPV6 && readIP6) {
+      return decodeIpv6(buf, ipOffset, end, timestampMicros, packetInfo);
+    }
+    return false;
+  }
+
+  private static int etherTypeOfVersion(byte first) {
+    int version = (first >> 4) & 0x0F;
+    if (version == 4) {
+      return ETHERTYPE_IPV4;
+    } else if (version == 6) {
+      return ETHERTYPE_IPV6;
+    }
+    return -1;
+  }
+
+  private static boolean decodeIpv4(
+          ByteBuffer buf, int ip, int end, long timestamp, BasicPacketInfo packetInfo) {
+    if (ip + 20 > end || ((buf.get(ip) >> 4) & 0x0F) != 4) {
+      return false;
+    }
+    int headerLength = (buf.get(ip) & 0x0F) * 4;
+    if (headerLength < 20 || ip + headerLength > end) {
+      return false;
+    }
+    int totalLength = u16(buf, ip + 2);
+    // total length 0 is used by TSO captures, the captured length is the only bound left
+    int ipEnd = totalLength >= headerLength ? Math.min(end, ip + totalLength) : end;
+    boolean firstFragment = (u16(buf, ip + 6) & 0x1FFF) == 0;
+    int protocol = buf.get(ip + 9) & 0xFF;
+
+    packetInfo.setSrc(0L, buf.getInt(ip + 12) & 0xFFFFFFFFL, 4);
+    packetInfo.setDst(0L, buf.getInt(ip + 16) & 0xFFFFFFFFL, 4);
+    packetInfo.setTimeStamp(timestamp);
+    if (firstFragment) {
+      decodeTransport(buf, protocol, ip + headerLength, ipEnd, packetInfo);
+    }
+    return true;
+  }
+
+  private static boolean decodeIpv6(
+          ByteBuffer buf, int ip, int end, long timestamp, BasicPacketInfo packetInfo) {
+    if (ip + 40 > end || ((buf.get(ip) >> 4) & 0x0F) != 6) {
+      return false;
+    }
+    int ipEnd = Math.min(end, ip + 40 + u16(buf, ip + 4));
+    int nextHeader = buf.get(ip + 6) & 0xFF;
+    int l4 = ip + 40;
+    boolean firstFragment = true;
+    // walk the extension headers up to the transport one
+    while (l4 + 8 <= ipEnd) {
+      if (nextHeader == 0 || nextHeader == 43 || nextHeader == 60) {
+        int extLength = ((buf.get(l4 + 1) & 0xFF) + 1) * 8;
+        nextHeader = buf.get(l4) & 0xFF;
+        l4 += extLength;
+      } else if (nextHeader == 44) {
+        firstFragment = (u16(buf, l4 + 2) & 0xFFF8) == 0;
+        nextHeader = buf.get(l4) & 0xFF;
+        l4 += 8;
+      } else if (nextHeader == 51) {
+        int extLength = ((buf.get(l4 + 1) & 0xFF) + 2) * 4;
+        nextHeader = buf.get(l4) & 0xFF;
+        l4 += extLength;
+      } else {
+        break;
+      }
+    }
+
+    packetInfo.setSrc(buf.getLong(ip + 8), buf.getLong(ip + 16), 16);
+    packetInfo.setDst(buf.getLong(ip + 24), buf.getLong(ip + 32), 16);
+    packetInfo.setTimeStamp(timestamp);
+    if (firstFragment) {
+      decodeTransport(buf, nextHeader, l4, ipEnd, packetInfo);
+    }
+    return true;
+  }
+
+  private static void decodeTransport(
+          ByteBuffer buf, int protocol, int l4, int ipEnd, BasicPacketInfo packetInfo) {
+    if (protocol == PROTO_TCP && l4 + 20 <= ipEnd) {
+      int headerLength = ((buf.get(l4 + 12) >> 4) & 0x0F) * 4;
+      int flags = buf.get(l4 + 13) & 0xFF;
+      packetInfo.setTCPWindow(u16(buf, l4 + 14));
+      packetInfo.setSrcPort(u16(buf, l4));
+      packetInfo.setDstPort(u16(buf, l4 + 2));
+      packetInfo.setProtocol(PROTO_TCP);
+      packetInfo.setFlagFIN((flags & 0x01) != 0);
+      packetInfo.setFlagSYN((flags & 0x02) != 0);
+      packetInfo.setFlagRST((flags & 0x04) != 0);
+      packetInfo.setFlagPSH((flags & 0x08) != 0);
+      packetInfo.setFlagACK((flags & 0x10) != 0);
+      packetInfo.setFlagURG((flags & 0x20) != 0);
+      packetInfo.setFlagECE((flags & 0x40) != 0);
+      packetInfo.setFlagCWR((flags & 0x80) != 0);
+      packetInfo.setPayloadBytes(Math.max(0, ipEnd - l4 - headerLength));
+      packetInfo.setHeaderBytes(headerLength);
+    } else if (protocol == PROTO_UDP && l4 + 8 <= ipEnd) {
+      packetInfo.setSrcPort(u16(buf, l4));
+      packetInfo.setDstPort(u16(buf, l4 + 2));
+      packetInfo.setPayloadBytes(ipEnd - l4 - 8);
+      packetInfo.setHeaderBytes(8);
+      packetInfo.setProtocol(PROTO_UDP);
+    }
+  }
+
+  private static int u16(ByteBuffer buf, int index) {
+    return ((buf.get(index) & 0xFF) << 8) | (buf.get(index + 1) & 0xFF);
+  }
+}
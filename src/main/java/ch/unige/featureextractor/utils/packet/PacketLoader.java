@@ -19,40 +19,400 @@
 package ch.unige.featureextractor.utils.packet;
 
 import ch.unige.featureextractor.utils.ExtractorFeaturesModel;
+import ch.unige.featureextractor.utils.Utility;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.apache.tika.io.IOUtils;
 import org.jnetpcap.PcapClosedException;
 
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.LineNumberReader;
+import java.io.OutputStream;
+import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.ResourceBundle;
 import java.util.UUID;
 
 public class PacketLoader {
 
   private static final Logger logger = LogManager.getLogger(PacketLoader.class);
+  public static final String READER_ENGINE_JNETPCAP = "jnetpcap";
+  public static final String READER_ENGINE_MAPPED = "mapped";
+  public static final String FLOW_STORE_HEAP = "heap";
+  public static final String FLOW_STORE_OFFHEAP = "offheap";
+  public static final String OUTPUT_FORMAT_CSV = "csv";
+  public static final String OUTPUT_FORMAT_ARROW = "arrow";
+  public static final String OUTPUT_COMPRESSION_NONE = "none";
+  private static final long FLOW_TIMEOUT = 120000000L;
+  private static final long ACTIVITY_TIMEOUT = 5000000L;
+  private static final int CHECKPOINT_PACKETS = 4096;
+  private static final String DUPLICATE_SKIP = "skip";
+  private static final String DUPLICATE_LINK = "link";
+  private static PcapIndex pcapIndex;
 
-  public static void extractorFeatures(File pcap) {
+  // Returns false when an extractor could not be loaded or could not read the capture
+  public static boolean extractorFeatures(File pcap) {
     String kindExtractor = ExtractorFeaturesModel.rb.getString("extractfeatures.kind.extractor");
     String[] extractors = kindExtractor.split(";");
+    PcapIndex index = getPcapIndex();
+    String fingerprint = null;
+    // read once a sampled fingerprint matches, else computed along the decoding of the capture
+    String contentHash = null;
+    if (index != null) {
+      try {
+        fingerprint = PcapIndex.fingerprint(pcap);
+      } catch (IOException e) {
+        logger.error("Error to fingerprint [" + pcap + "]", e);
+      }
+    }
+    boolean extracted = true;
+    // extractors sharing the reader engine are fed by a single read of the capture
+    Map<String, List<String>> groups = new LinkedHashMap<>();
     for (String extractor : extractors) {
       try {
         ResourceBundle rb = ResourceBundle.getBundle(extractor);
-        extractorWorker(pcap, rb);
+        String configHash = fingerprint != null ? PcapIndex.configHash(extractor, rb) : null;
+        if (configHash != null && index.mayContain(fingerprint, configHash)) {
+          if (contentHash == null) {
+            contentHash = contentHash(pcap);
+          }
+          File existing =
+                  contentHash != null ? index.lookup(fingerprint, configHash, contentHash) : null;
+          if (existing != null) {
+            reuseOutput(existing, pcap, extractor, rb);
+            continue;
+          }
+          logger.info("[" + pcap + "] matches the samples of an indexed pcap, not its content");
+        }
+        String group = isSinglePass() ? getReaderEngine(rb) : extractor;
+        groups.computeIfAbsent(group, k -> new ArrayList<>()).add(extractor);
       } catch (Exception e) {
         logger.error("Error to load extractor [" + extractor + "]", e);
+        extracted = false;
+      }
+    }
+    for (List<String> group : groups.values()) {
+      try {
+        ContentDigest digest =
+                fingerprint != null && contentHash == null ? new ContentDigest(pcap) : null;
+        List<ExtractorOutput> outputs = extractorWorker(pcap, group, digest);
+        if (outputs == null) {
+          extracted = false;
+          if (digest != null) {
+            digest.close();
+          }
+        } else if (fingerprint != null) {
+          if (digest != null) {
+            contentHash = contentHash(pcap, digest);
+          }
+          for (ExtractorOutput output : outputs) {
+            if (contentHash != null) {
+              String configHash = PcapIndex.configHash(output.getExtractor(), output.getRb());
+              index.add(fingerprint, configHash, contentHash, output.getFile());
+            }
+          }
+        }
+      } catch (Exception e) {
+        logger.error("Error to run extractors " + group, e);
+        extracted = false;
+      }
+    }
+    return extracted;
+  }
+
+  // The index of the outputs already written, null when pcap.index.file is not set
+  private static synchronized PcapIndex getPcapIndex() {
+    String file = Utility.getProperty(ExtractorFeaturesModel.rb, "pcap.index.file", "");
+    if (StringUtils.isBlank(file)) {
+      return null;
+    }
+    if (pcapIndex == null) {
+      pcapIndex = new PcapIndex(new File(file));
+    }
+    return pcapIndex;
+  }
+
+  private static String contentHash(File pcap) {
+    return contentHash(pcap, new ContentDigest(pcap));
+  }
+
+  private static String contentHash(File pcap, ContentDigest digest) {
+    try {
+      return digest.finish();
+    } catch (IOException e) {
+      logger.error("Error to hash [" + pcap + "]", e);
+      return null;
+    }
+  }
+
+  /*
+   * A capture already processed with the same extractor properties is skipped, or with
+   * pcap.index.duplicate=link gets a new output hard-linked to the existing one.
+   */
+  private static void reuseOutput(File existing, File pcap, String extractor, ResourceBundle rb) {
+    String mode = Utility.getProperty(ExtractorFeaturesModel.rb, "pcap.index.duplicate", "skip");
+    if (DUPLICATE_LINK.equalsIgnoreCase(mode)) {
+      String name = existing.getName();
+      File link = createOutputFile(rb, name.substring(Math.max(0, name.indexOf('.'))));
+      try {
+        Files.delete(link.toPath());
+        Files.createLink(link.toPath(), existing.toPath());
+      } catch (IOException e) {
+        logger.error("Error to link [" + link + "] to [" + existing + "]", e);
+      }
+      logger.info("[" + pcap + "] already processed by " + extractor + ", linked to " + link);
+    } else {
+      if (!DUPLICATE_SKIP.equalsIgnoreCase(mode)) {
+        logger.warn("Unknown pcap.index.duplicate [" + mode + "], use " + DUPLICATE_SKIP);
+      }
+      logger.info("[" + pcap + "] already processed by " + extractor + " into " + existing);
+    }
+  }
+
+  private static boolean isSinglePass() {
+    return Boolean.parseBoolean(
+            Utility.getProperty(ExtractorFeaturesModel.rb, "extractfeatures.single.pass", "true"));
+  }
+
+  // The native libraries are needed only when at least one extractor uses the jnetpcap engine
+  public static boolean isNativeReaderRequired() {
+    String kindExtractor = ExtractorFeaturesModel.rb.getString("extractfeatures.kind.extractor");
+    for (String extractor : kindExtractor.split(";")) {
+      try {
+        if (READER_ENGINE_JNETPCAP.equals(getReaderEngine(ResourceBundle.getBundle(extractor)))) {
+          return true;
+        }
+      } catch (Exception e) {
+        logger.error("Error to load extractor [" + extractor + "]", e);
+      }
+    }
+    return false;
+  }
+
+  private static String getReaderEngine(ResourceBundle rb) {
+    String engine = Utility.getProperty(rb, "pcap.reader.engine", READER_ENGINE_JNETPCAP);
+    if (READER_ENGINE_MAPPED.equalsIgnoreCase(engine)) {
+      return READER_ENGINE_MAPPED;
+    } else if (!READER_ENGINE_JNETPCAP.equalsIgnoreCase(engine)) {
+      logger.warn("Unknown pcap.reader.engine [" + engine + "], use " + READER_ENGINE_JNETPCAP);
+    }
+    return READER_ENGINE_JNETPCAP;
+  }
+
+  /*
+   * The pcapng and nanosecond pcap captures are read by the mapped engine whatever the configured
+   * one, their blocks and timestamps are parsed here rather than left to the system libpcap.
+   */
+  static PacketSource openPacketSource(
+          String inputFile,
+          boolean readIP4,
+          boolean readIP6,
+          ResourceBundle rb,
+          ContentDigest digest)
+          throws IOException {
+    String format = CaptureFormat.sniff(new File(inputFile));
+    boolean mapped = READER_ENGINE_MAPPED.equals(getReaderEngine(rb));
+    if (!mapped
+            && (CaptureFormat.PCAPNG.equals(format) || CaptureFormat.PCAP_NANO.equals(format))) {
+      logger.debug("Read the " + format + " [" + inputFile + "] with the mapped engine");
+      mapped = true;
+    }
+    if (mapped) {
+      int threads = getIntProperty("pcap.reader.threads", 1);
+      long chunkSize = getIntProperty("pcap.reader.chunk.mb", 64) * 1024L * 1024L;
+      // captures smaller than a chunk gain nothing from the parallel decoding, the blocks of a
+      // pcapng are read in sequence
+      if (threads > 1
+              && new File(inputFile).length() > chunkSize
+              && !CaptureFormat.PCAPNG.equals(format)) {
+        ParallelMappedPacketReader reader =
+                new ParallelMappedPacketReader(inputFile, readIP4, readIP6, threads, chunkSize);
+        reader.setDigest(digest);
+        return reader;
+      }
+      MappedPacketReader reader = new MappedPacketReader(inputFile, readIP4, readIP6);
+      reader.setDigest(digest);
+      return reader;
+    }
+    PacketReader reader = new PacketReader(inputFile, readIP4, readIP6);
+    reader.setDigest(digest);
+    return reader;
+  }
+
+  /*
+   * The outputs of a capture read to the end, null when it could not be read; digest, when not
+   * null, follows the reading of the capture.
+   */
+  private static List<ExtractorOutput> extractorWorker(
+          File pcap, List<String> extractors, ContentDigest digest) {
+    long interval = getIntProperty("checkpoint.interval.seconds", 0) * 1000L;
+    if (interval > 0) {
+      if (isCheckpointSupported(extractors)) {
+        return resumablePcapFile(pcap, extractors, interval, digest);
+      }
+      logger.warn(
+              "Checkpoints need the " + READER_ENGINE_MAPPED + " engine, a single "
+                      + FLOW_STORE_HEAP + " flow generator and uncompressed CSV outputs");
+    }
+    List<ExtractorOutput> outputs = createOutputs(extractors);
+    boolean read =
+            readPcapFile(pcap.getAbsolutePath(), outputs, FLOW_TIMEOUT, ACTIVITY_TIMEOUT, digest);
+    return read ? outputs : null;
+  }
+
+  private static boolean isCheckpointSupported(List<String> extractors) {
+    String store = Utility.getProperty(ExtractorFeaturesModel.rb, "flow.store", FLOW_STORE_HEAP);
+    int shards = getIntProperty("flow.generator.shards", 1);
+    if (!FLOW_STORE_HEAP.equalsIgnoreCase(store) || shards > 1) {
+      return false;
+    }
+    for (String extractor : extractors) {
+      ResourceBundle rb = ResourceBundle.getBundle(extractor);
+      String format = getOutputFormat(rb);
+      if (!READER_ENGINE_MAPPED.equals(getReaderEngine(rb))
+              || !OUTPUT_FORMAT_CSV.equals(format)
+              || getOutputCompression(rb, format) != null) {
+        return false;
       }
     }
+    return true;
   }
 
-  private static void extractorWorker(File pcap, ResourceBundle rb) {
-    long flowTimeout = 120000000L;
-    long activityTimeout = 5000000L;
+  /*
+   * Reads the capture with the sequential mapped reader and saves a checkpoint every interval, a
+   * run started again on the same capture goes on from the last one.
+   */
+  private static List<ExtractorOutput> resumablePcapFile(
+          File pcap, List<String> extractors, long interval, ContentDigest digest) {
+    String inputFile = pcap.getAbsolutePath();
+    MappedPacketReader packetReader;
+    try {
+      packetReader = new MappedPacketReader(inputFile, true, false);
+      packetReader.setDigest(digest);
+    } catch (IOException e) {
+      logger.error("Error to open [" + inputFile + "]", e);
+      return null;
+    }
+    File dir =
+            new File(
+                    Utility.getProperty(
+                            ExtractorFeaturesModel.rb,
+                            "checkpoint.dir",
+                            pcap.getAbsoluteFile().getParent() + File.separator + ".checkpoint"));
+    Checkpoint checkpoint = new Checkpoint(dir, pcap, interval);
+    FlowGenerator restored = new FlowGenerator(true, FLOW_TIMEOUT, ACTIVITY_TIMEOUT);
+    List<ExtractorOutput> resumed = checkpoint.restore(extractors, restored, packetReader);
+    FlowGenerator flowGen =
+            resumed != null ? restored : new FlowGenerator(true, FLOW_TIMEOUT, ACTIVITY_TIMEOUT);
+    List<ExtractorOutput> outputs;
+    FlowWriter flowWriter;
+    try {
+      outputs = resumed != null ? resumed : createOutputs(extractors);
+      flowWriter = new FlowWriter(outputs, resumed != null);
+    } catch (Exception e) {
+      logger.error("Error to open the outputs of [" + inputFile + "]", e);
+      packetReader.close();
+      return null;
+    }
+    Runnable save =
+            () -> {
+              if (checkpoint.isDue()) {
+                checkpoint.save(packetReader, flowGen, flowWriter, outputs);
+              }
+            };
+    if (resumed == null) {
+      // a run stopped before the first interval appends to the same outputs
+      checkpoint.save(packetReader, flowGen, flowWriter, outputs);
+    }
+    processPackets(packetReader, flowWriter, inputFile, flowGen, save);
+    checkpoint.delete();
+    return outputs;
+  }
+
+  /*
+   * Tail mode: the capture is read while it is written, the flows of every extractor are written
+   * as they finish and the outputs are flushed whenever the reader waits for the file to grow.
+   */
+  public static void tailFeatures(TailInputStream input, String name) {
+    String kindExtractor = ExtractorFeaturesModel.rb.getString("extractfeatures.kind.extractor");
+    List<ExtractorOutput> outputs;
+    FlowWriter flowWriter;
+    try {
+      outputs = createOutputs(Arrays.asList(kindExtractor.split(";")));
+      flowWriter = new FlowWriter(outputs);
+    } catch (Exception e) {
+      logger.error("Error to open the outputs of [" + name + "]", e);
+      return;
+    }
+    input.setIdleListener(flowWriter::flush);
+    PacketSource packetReader;
+    try {
+      packetReader = new StreamPacketReader(input, name, true, false);
+    } catch (IOException e) {
+      logger.error("Error to open [" + name + "]", e);
+      flowWriter.close();
+      return;
+    }
+    FlowProcessor flowGen = createFlowProcessor(FLOW_TIMEOUT, ACTIVITY_TIMEOUT);
+    processPackets(packetReader, flowWriter, name, flowGen, null);
+  }
+
+  private static List<ExtractorOutput> createOutputs(List<String> extractors) {
+    List<ExtractorOutput> outputs = new ArrayList<>();
+    for (String extractor : extractors) {
+      ResourceBundle rb = ResourceBundle.getBundle(extractor);
+      String format = getOutputFormat(rb);
+      String compression = getOutputCompression(rb, format);
+      String suffix =
+              OUTPUT_FORMAT_ARROW.equals(format)
+                      ? ExtractorFeaturesModel.ARROW_SUFFIX
+                      : ExtractorFeaturesModel.CSV_SUFFIX;
+      if (compression != null) {
+        suffix += BlockCompressedChannel.getSuffix(compression);
+      }
+      File file = createOutputFile(rb, suffix);
+      outputs.add(new ExtractorOutput(extractor, rb, format, compression, file));
+    }
+    return outputs;
+  }
+
+  private static String getOutputFormat(ResourceBundle rb) {
+    String format = Utility.getProperty(rb, "output.format", OUTPUT_FORMAT_CSV);
+    if (OUTPUT_FORMAT_ARROW.equalsIgnoreCase(format)) {
+      return OUTPUT_FORMAT_ARROW;
+    } else if (!OUTPUT_FORMAT_CSV.equalsIgnoreCase(format)) {
+      logger.warn("Unknown output.format [" + format + "], use " + OUTPUT_FORMAT_CSV);
+    }
+    return OUTPUT_FORMAT_CSV;
+  }
+
+  // The codec of the CSV blocks, null when the CSV is written uncompressed
+  private static String getOutputCompression(ResourceBundle rb, String format) {
+    String compression = Utility.getProperty(rb, "csv.output.compression", OUTPUT_COMPRESSION_NONE);
+    if (OUTPUT_COMPRESSION_NONE.equalsIgnoreCase(compression)) {
+      return null;
+    } else if (OUTPUT_FORMAT_ARROW.equals(format)) {
+      logger.warn("csv.output.compression is ignored by the " + OUTPUT_FORMAT_ARROW + " output");
+      return null;
+    } else if (BlockCompressedChannel.GZIP.equalsIgnoreCase(compression)) {
+      return BlockCompressedChannel.GZIP;
+    } else if (BlockCompressedChannel.LZ4.equalsIgnoreCase(compression)) {
+      return BlockCompressedChannel.LZ4;
+    }
+    logger.warn(
+            "Unknown csv.output.compression [" + compression + "], use " + OUTPUT_COMPRESSION_NONE);
+    return null;
+  }
+
+  private static File createOutputFile(ResourceBundle rb, String suffix) {
     String folderProp = rb.getString("csv.output.dir");
     logger.debug("Set [" + folderProp + "]");
     if (StringUtils.isBlank(folderProp)) {
@@ -64,7 +424,7 @@ public class PacketLoader {
             folderProp
                     + File.separator
                     + UUID.randomUUID().toString()
-                    + ExtractorFeaturesModel.CSV_SUFFIX;
+                    + suffix;
     File out = new File(outFile);
     out.getParentFile().mkdirs();
     if (!out.exists()) {
@@ -74,27 +434,90 @@ public class PacketLoader {
         logger.error("Error to create [" + outFile + "]", e);
       }
     }
-    readPcapFile(pcap.getAbsolutePath(), out.getAbsolutePath(), flowTimeout, activityTimeout, rb);
+    return out;
   }
 
-  private static void readPcapFile(
-          String inputFile, String outPath, long flowTimeout, long activityTimeout, ResourceBundle rb) {
+  private static boolean readPcapFile(
+          String inputFile,
+          List<ExtractorOutput> outputs,
+          long flowTimeout,
+          long activityTimeout,
+          ContentDigest digest) {
 
-    FlowGenerator flowGen = new FlowGenerator(true, flowTimeout, activityTimeout);
     boolean readIP6 = false;
     boolean readIP4 = true;
-    PacketReader packetReader = new PacketReader(inputFile, readIP4, readIP6);
+    PacketSource packetReader;
+    try {
+      // every output of the group shares the same reader engine
+      packetReader =
+              openPacketSource(inputFile, readIP4, readIP6, outputs.get(0).getRb(), digest);
+    } catch (IOException e) {
+      logger.error("Error to open [" + inputFile + "]", e);
+      return false;
+    }
+    FlowWriter flowWriter;
+    try {
+      flowWriter = new FlowWriter(outputs);
+    } catch (IOException e) {
+      logger.error("Error to open the outputs of [" + inputFile + "]", e);
+      packetReader.close();
+      return false;
+    }
+    FlowProcessor flowGen = createFlowProcessor(flowTimeout, activityTimeout);
+    processPackets(packetReader, flowWriter, inputFile, flowGen, null);
+    return true;
+  }
+
+  /*
+   * Pipeline mode: the capture is read from a stream such as stdin or a named pipe, and the rows
+   * of the stream.extractor columns are written to output as soon as their flows finish.
+   */
+  public static void extractorFeatures(InputStream input, String name, OutputStream output) {
+    String kindExtractor = ExtractorFeaturesModel.rb.getString("extractfeatures.kind.extractor");
+    String extractor =
+            Utility.getProperty(
+                    ExtractorFeaturesModel.rb, "stream.extractor", kindExtractor.split(";")[0]);
+    PacketSource packetReader;
+    try {
+      packetReader = new StreamPacketReader(input, name, true, false);
+    } catch (IOException e) {
+      logger.error("Error to open [" + name + "]", e);
+      return;
+    }
+    FlowWriter flowWriter;
+    try {
+      flowWriter = new FlowWriter(ResourceBundle.getBundle(extractor), output);
+    } catch (Exception e) {
+      logger.error("Error to open the output of [" + name + "]", e);
+      packetReader.close();
+      return;
+    }
+    FlowProcessor flowGen = createFlowProcessor(FLOW_TIMEOUT, ACTIVITY_TIMEOUT);
+    processPackets(packetReader, flowWriter, name, flowGen, null);
+  }
+
+  // checkpoint, when not null, runs between two packets every CHECKPOINT_PACKETS packets
+  private static void processPackets(
+          PacketSource packetReader,
+          FlowWriter flowWriter,
+          String inputFile,
+          FlowProcessor flowGen,
+          Runnable checkpoint) {
+    // the flows are written as soon as they finish, the open ones at the end of the capture
+    flowGen.addFlowListener(flowWriter);
 
     int nValid = 0;
     int nTotal = 0;
     int nDiscarded = 0;
     long start = System.currentTimeMillis();
     int i = 0;
+    // a single view is filled by the reader for every packet, the flows copy what they keep
+    BasicPacketInfo basicPacket = new BasicPacketInfo();
     while (true) {
       try {
-        BasicPacketInfo basicPacket = packetReader.nextPacket();
+        boolean valid = packetReader.nextPacket(basicPacket);
         nTotal++;
-        if (basicPacket != null) {
+        if (valid) {
           flowGen.addPacket(basicPacket);
           nValid++;
         } else {
@@ -103,10 +526,49 @@ public class PacketLoader {
       } catch (PcapClosedException e) {
         break;
       }
+      if (checkpoint != null && nTotal % CHECKPOINT_PACKETS == 0) {
+        checkpoint.run();
+      }
       i++;
     }
-    File saveFileFullPath = new File(outPath);
-    flowGen.dumpLabeledCurrentFlow(saveFileFullPath.getPath(), FlowFeature.getHeader(rb), rb);
+    packetReader.close();
+    flowGen.finishCurrentFlows();
+    flowGen.close();
+    flowWriter.close();
+    logger.debug("{} flows written from [{}]", flowWriter.getTotal(), inputFile);
+  }
+
+  // More than one shard splits the flows of the capture among as many FlowGenerator threads
+  private static FlowProcessor createFlowProcessor(long flowTimeout, long activityTimeout) {
+    int shards = getIntProperty("flow.generator.shards", 1);
+    String store = Utility.getProperty(ExtractorFeaturesModel.rb, "flow.store", FLOW_STORE_HEAP);
+    if (FLOW_STORE_OFFHEAP.equalsIgnoreCase(store)) {
+      if (shards > 1) {
+        logger.warn("flow.generator.shards is ignored by the off-heap flow store");
+      }
+      long storeBytes = getIntProperty("flow.store.offheap.mb", 1024) * 1024L * 1024L;
+      return new OffHeapFlowGenerator(true, flowTimeout, activityTimeout, storeBytes);
+    } else if (!FLOW_STORE_HEAP.equalsIgnoreCase(store)) {
+      logger.warn("Unknown flow.store [" + store + "], use " + FLOW_STORE_HEAP);
+    }
+    if (shards > 1) {
+      return new ShardedFlowGenerator(true, flowTimeout, activityTimeout, shards);
+    }
+    return new FlowGenerator(true, flowTimeout, activityTimeout);
+  }
+
+  private static int getIntProperty(String key, int defaultValue) {
+    return getIntProperty(ExtractorFeaturesModel.rb, key, defaultValue);
+  }
+
+  public static int getIntProperty(ResourceBundle rb, String key, int defaultValue) {
+    String value = Utility.getProperty(rb, key, String.valueOf(defaultValue));
+    try {
+      return Integer.parseInt(value);
+    } catch (NumberFormatException e) {
+      logger.warn("Invalid " + key + " [" + value + "], use " + defaultValue);
+      return defaultValue;
+    }
   }
 
   public static long countLines(String fileName) {
@@ -125,7 +587,11 @@ public class PacketLoader {
       logger.error(e.getMessage());
     } finally {
       if (lnr != null) {
-        IOUtils.closeQuietly(lnr);
+        try {
+          lnr.close();
+        } catch (IOException e) {
+          logger.debug(e.getMessage());
+        }
       }
     }
     return linenumber;
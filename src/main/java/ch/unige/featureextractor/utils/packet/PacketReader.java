@@ -33,8 +33,10 @@ import org.jnetpcap.protocol.tcpip.Tcp;
 import org.jnetpcap.protocol.tcpip.Udp;
 import org.jnetpcap.protocol.vpn.L2TP;
 
-public class PacketReader {
+public class PacketReader implements PacketSource {
     private static final Logger logger = LogManager.getLogger(PacketReader.class);
+    // header instances are reused by every call of getBasicPacketInfo on the same thread
+    private static final ThreadLocal<Protocol> protocols = ThreadLocal.withInitial(Protocol::new);
     private final boolean readIP6;
     private final boolean readIP4;
     private Pcap pcapReader;
@@ -47,7 +49,14 @@ public class PacketReader {
     private L2TP l2tp;
     private PcapHeader hdr;
     private JBuffer buf;
+    private PcapPacket packet;
+    private byte[] ip4Address;
+    private byte[] ip6Address;
     private String file;
+    // offset of the next record, the captures read by libpcap are classic pcaps
+    private long position = MappedPacketReader.GLOBAL_HEADER_LENGTH;
+    // null when the content hash is not needed
+    private ContentDigest digest;
 
     public PacketReader(String filename) {
         super();
@@ -67,7 +76,7 @@ public class PacketReader {
             PcapPacket packet, boolean readIP4, boolean readIP6) {
         BasicPacketInfo packetInfo = null;
 
-        Protocol protocol = new Protocol();
+        Protocol protocol = protocols.get();
 
         if (readIP4) {
             packetInfo = getIpv4Info(packet, protocol);
@@ -210,31 +219,48 @@ public class PacketReader {
             this.l2tp = new L2TP();
             hdr = new PcapHeader(JMemory.POINTER);
             buf = new JBuffer(JMemory.POINTER);
+            packet = new PcapPacket(JMemory.POINTER);
+            ip4Address = new byte[4];
+            ip6Address = new byte[16];
         }
     }
 
+    @Override
     public BasicPacketInfo nextPacket() {
-        PcapPacket packet;
-        BasicPacketInfo packetInfo = null;
+        BasicPacketInfo packetInfo = new BasicPacketInfo();
+        return nextPacket(packetInfo) ? packetInfo : null;
+    }
+
+    @Override
+    public boolean nextPacket(BasicPacketInfo packetInfo) {
+        boolean valid = false;
         try {
-            if (pcapReader.nextEx(hdr, buf) == Pcap.NEXT_EX_OK) {
-                packet = new PcapPacket(hdr, buf);
+            if (pcapReader != null && pcapReader.nextEx(hdr, buf) == Pcap.NEXT_EX_OK) {
+                position += MappedPacketReader.RECORD_HEADER_LENGTH + hdr.caplen();
+                if (digest != null) {
+                    // the pages just read by libpcap are still cached
+                    digest.follow(position);
+                }
+                // peer the reused packet to the libpcap buffer instead of copying it
+                packet.peer(buf);
+                packet.getCaptureHeader().peerTo(hdr, 0);
                 packet.scan(Ethernet.ID);
+                packetInfo.reset();
 
                 if (this.readIP4) {
-                    packetInfo = getIpv4Info(packet);
-                    if (packetInfo == null && this.readIP6) {
-                        packetInfo = getIpv6Info(packet);
+                    valid = fillIpv4Info(packet, packetInfo);
+                    if (!valid && this.readIP6) {
+                        valid = fillIpv6Info(packet, packetInfo);
                     }
                 } else if (this.readIP6) {
-                    packetInfo = getIpv6Info(packet);
-                    if (packetInfo == null && this.readIP4) {
-                        packetInfo = getIpv4Info(packet);
+                    valid = fillIpv6Info(packet, packetInfo);
+                    if (!valid && this.readIP4) {
+                        valid = fillIpv4Info(packet, packetInfo);
                     }
                 }
 
-                if (packetInfo == null) {
-                    packetInfo = getVPNInfo(packet);
+                if (!valid) {
+                    valid = fillVPNInfo(packet, packetInfo);
                 }
 
             } else {
@@ -245,18 +271,17 @@ public class PacketReader {
             throw e;
         } catch (Exception ex) {
             logger.debug(ex.getMessage());
+            return false;
         }
-        return packetInfo;
+        return valid;
     }
 
-    private BasicPacketInfo getIpv4Info(PcapPacket packet) {
-        BasicPacketInfo packetInfo = null;
+    private boolean fillIpv4Info(PcapPacket packet, BasicPacketInfo packetInfo) {
         try {
 
             if (packet.hasHeader(ipv4)) {
-                packetInfo = new BasicPacketInfo();
-                packetInfo.setSrc(this.ipv4.source());
-                packetInfo.setDst(this.ipv4.destination());
+                packetInfo.setSrc(this.ipv4.sourceToByteArray(ip4Address));
+                packetInfo.setDst(this.ipv4.destinationToByteArray(ip4Address));
                 packetInfo.setTimeStamp(packet.getCaptureHeader().timestampInMicros());
 
                 if (this.firstPacket == 0L)
@@ -285,6 +310,7 @@ public class PacketReader {
                     packetInfo.setHeaderBytes(udp.getHeaderLength());
                     packetInfo.setProtocol(17);
                 }
+                return true;
             }
         } catch (Exception e) {
             // e.printStackTrace();
@@ -292,19 +318,16 @@ public class PacketReader {
             logger.error(e.getMessage());
             logger.error("HEXDump packet with ID [" + ipv4.getId() + "]");
             logger.error(packet.toHexdump());
-            return null;
         }
 
-        return packetInfo;
+        return false;
     }
 
-    private BasicPacketInfo getIpv6Info(PcapPacket packet) {
-        BasicPacketInfo packetInfo = null;
+    private boolean fillIpv6Info(PcapPacket packet, BasicPacketInfo packetInfo) {
         try {
             if (packet.hasHeader(ipv6)) {
-                packetInfo = new BasicPacketInfo();
-                packetInfo.setSrc(this.ipv6.source());
-                packetInfo.setDst(this.ipv6.destination());
+                packetInfo.setSrc(this.ipv6.sourceToByteArray(ip6Address));
+                packetInfo.setDst(this.ipv6.destinationToByteArray(ip6Address));
                 packetInfo.setTimeStamp(packet.getCaptureHeader().timestampInMillis());
 
                 if (packet.hasHeader(this.tcp)) {
@@ -320,47 +343,61 @@ public class PacketReader {
                     packetInfo.setHeaderBytes(tcp.getHeaderLength());
                     packetInfo.setProtocol(17);
                 }
+                return true;
             }
         } catch (Exception e) {
             logger.error("Error", e);
             logger.error("Packet hexdump", packet.toHexdump());
-            return null;
         }
 
-        return packetInfo;
+        return false;
     }
 
-    private BasicPacketInfo getVPNInfo(PcapPacket packet) {
-        BasicPacketInfo packetInfo = null;
+    private boolean fillVPNInfo(PcapPacket packet, BasicPacketInfo packetInfo) {
+        boolean valid = false;
         try {
             packet.scan(L2TP.ID);
 
             if (packet.hasHeader(l2tp)) {
                 if (this.readIP4) {
                     packet.scan(ipv4.getId());
-                    packetInfo = getIpv4Info(packet);
-                    if (packetInfo == null && this.readIP6) {
+                    valid = fillIpv4Info(packet, packetInfo);
+                    if (!valid && this.readIP6) {
                         packet.scan(ipv6.getId());
-                        packetInfo = getIpv6Info(packet);
+                        valid = fillIpv6Info(packet, packetInfo);
                     }
                 } else if (this.readIP6) {
                     packet.scan(ipv6.getId());
-                    packetInfo = getIpv6Info(packet);
-                    if (packetInfo == null && this.readIP4) {
+                    valid = fillIpv6Info(packet, packetInfo);
+                    if (!valid && this.readIP4) {
                         packet.scan(ipv4.getId());
-                        packetInfo = getIpv4Info(packet);
+                        valid = fillIpv4Info(packet, packetInfo);
                     }
                 }
             }
         } catch (Exception e) {
             logger.error("Error", e);
             logger.error("Packet hexdump", packet.toHexdump());
-            return null;
+            return false;
         }
 
-        return packetInfo;
+        return valid;
+    }
+
+    // The SHA-256 of the capture is computed by digest along the reading
+    void setDigest(ContentDigest digest) {
+        this.digest = digest;
+    }
+
+    @Override
+    public void close() {
+        if (pcapReader != null) {
+            pcapReader.close();
+            pcapReader = null;
+        }
     }
 
+    @Override
     public long getFirstPacket() {
         return firstPacket;
     }
@@ -369,6 +406,7 @@ public class PacketReader {
         this.firstPacket = firstPacket;
     }
 
+    @Override
     public long getLastPacket() {
         return lastPacket;
     }
@@ -0,0 +1,40 @@
+/*
+ * Copyright (c)  Benedetto Marco Serinelli
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ch.unige.featureextractor.utils.packet;
+
+/*
+ * Common contract of the packet reader engines: nextPacket() returns the decoded packet, null when
+ * the frame is discarded, and throws PcapClosedException once the capture is exhausted.
+ */
+public interface PacketSource {
+
+  BasicPacketInfo nextPacket();
+
+  /*
+   * Allocation-free variant: fills the caller-owned packetInfo and returns false when the frame is
+   * discarded. The view is overwritten by the next call, so consumers copy what they keep.
+   */
+  boolean nextPacket(BasicPacketInfo packetInfo);
+
+  long getFirstPacket();
+
+  long getLastPacket();
+
+  void close();
+}
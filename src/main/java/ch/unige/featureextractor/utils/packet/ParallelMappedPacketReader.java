@@ -0,0 +1,378 @@
+/*
+ * Copyright (c)  Benedetto Marco Serinelli
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ch.unige.featureextractor.utils.packet;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jnetpcap.PcapClosedException;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Memory-mapped reader that splits a large capture into byte ranges decoded by a pool of threads.
+ * A chunk finds its first record by validating a chain of candidate record headers, then decodes
+ * every record starting before the next range. The packets are handed out in capture order, so the
+ * flows are exactly the ones of a sequential read.
+ * The consumer checks that each chunk starts where the previous one really ended: a wrong guess
+ * (a payload that looks like a chain of headers) is decoded again from the right offset.
+ */
+public class ParallelMappedPacketReader implements PacketSource {
+  private static final Logger logger = LogManager.getLogger(ParallelMappedPacketReader.class);
+  private static final int CHAIN_LENGTH = 4;
+  private static final long RECORD_SPAN =
+          MappedPacketReader.RECORD_HEADER_LENGTH + MappedPacketReader.MAX_RECORD_LENGTH;
+  // bytes mapped past the end of a range for the last record and the boundary chain
+  private static final long SLACK = CHAIN_LENGTH * RECORD_SPAN;
+  private static final AtomicInteger readers = new AtomicInteger();
+  private final boolean readIP6;
+  private final boolean readIP4;
+  private final String file;
+  private final RandomAccessFile raf;
+  private final FileChannel channel;
+  private final long fileSize;
+  private final long chunkSize;
+  private final int chunkCount;
+  private final int aheadCount;
+  private final ExecutorService executor;
+  private final Queue<Future<Chunk>> pending = new ArrayDeque<>();
+  private final Queue<Chunk> spare = new ConcurrentLinkedQueue<>();
+  private boolean littleEndian;
+  private int linkType;
+  // fraction of second of a record per microsecond, 1000 in a nanosecond pcap
+  private long fractionPerMicro = 1L;
+  private int snapLength;
+  private int submitted;
+  private Chunk current;
+  private int index;
+  private long expectedStart = MappedPacketReader.GLOBAL_HEADER_LENGTH;
+  private boolean closed = false;
+  private long firstPacket;
+  private long lastPacket;
+  // null when the content hash is not needed
+  private ContentDigest digest;
+
+  public ParallelMappedPacketReader(
+          String filename, boolean readip4, boolean readip6, int threads, long chunkSize)
+          throws IOException {
+    super();
+    this.readIP4 = readip4;
+    this.readIP6 = readip6;
+    this.file = filename;
+    logger.info(filename);
+    this.raf = new RandomAccessFile(filename, "r");
+    this.channel = raf.getChannel();
+    this.fileSize = channel.size();
+    try {
+      readGlobalHeader();
+    } catch (IOException e) {
+      close();
+      throw e;
+    }
+    // a chunk is mapped with its slack in a single buffer
+    this.chunkSize = Math.max(1L, Math.min(chunkSize, Integer.MAX_VALUE - SLACK));
+    long records = fileSize - MappedPacketReader.GLOBAL_HEADER_LENGTH;
+    this.chunkCount = (int) Math.max(1L, (records + this.chunkSize - 1) / this.chunkSize);
+    this.aheadCount = threads + 1;
+    String prefix = "PcapChunk-" + readers.incrementAndGet() + "-";
+    AtomicInteger workers = new AtomicInteger();
+    this.executor =
+            Executors.newFixedThreadPool(
+                    threads,
+                    r -> {
+                      Thread t = new Thread(r, prefix + workers.incrementAndGet());
+                      t.setDaemon(true);
+                      return t;
+                    });
+    submitChunks();
+  }
+
+  private void readGlobalHeader() throws IOException {
+    if (fileSize < MappedPacketReader.GLOBAL_HEADER_LENGTH) {
+      throw new IOException("File too short to be a pcap [" + file + "]");
+    }
+    MappedByteBuffer header =
+            channel.map(FileChannel.MapMode.READ_ONLY, 0, MappedPacketReader.GLOBAL_HEADER_LENGTH);
+    int magic = header.getInt(0);
+    String format = CaptureFormat.of(header, 0);
+    // a pcapng has no record boundary to find, it is read by the sequential reader
+    if (!CaptureFormat.PCAP.equals(format) && !CaptureFormat.PCAP_NANO.equals(format)) {
+      throw new IOException(String.format("Unsupported pcap magic 0x%08X [%s]", magic, file));
+    }
+    littleEndian = CaptureFormat.isLittleEndian(magic);
+    fractionPerMicro = CaptureFormat.PCAP_NANO.equals(format) ? 1000L : 1L;
+    snapLength = readInt(header, 16);
+    if (snapLength <= 0 || snapLength > MappedPacketReader.MAX_RECORD_LENGTH) {
+      snapLength = MappedPacketReader.MAX_RECORD_LENGTH;
+    }
+    linkType = readInt(header, 20) & 0x0FFFFFFF;
+    if (!PacketDecoder.isSupportedLinkType(linkType)) {
+      throw new IOException("Unsupported link type " + linkType + " [" + file + "]");
+    }
+  }
+
+  private void submitChunks() {
+    while (submitted < chunkCount && pending.size() < aheadCount) {
+      final int chunk = submitted++;
+      pending.add(executor.submit(() -> decodeChunk(chunk, -1L)));
+    }
+  }
+
+  private long nominalStart(int chunk) {
+    return MappedPacketReader.GLOBAL_HEADER_LENGTH + chunk * chunkSize;
+  }
+
+  /*
+   * Decodes the records of a chunk, starting from the given offset or, when it is negative, from
+   * the first offset of the range that looks like a chain of records.
+   */
+  private Chunk decodeChunk(int chunk, long knownStart) throws IOException {
+    long from = knownStart >= 0 ? knownStart : nominalStart(chunk);
+    long end = chunk + 1 < chunkCount ? nominalStart(chunk + 1) : fileSize;
+    long mapEnd = Math.min(fileSize, Math.max(end, from) + SLACK);
+    Chunk result = spare.poll();
+    if (result == null) {
+      result = new Chunk();
+    }
+    result.clear();
+    if (from >= fileSize) {
+      result.start = from;
+      result.end = from;
+      return result;
+    }
+    MappedByteBuffer buffer =
+            channel.map(FileChannel.MapMode.READ_ONLY, from, mapEnd - from);
+    buffer.order(ByteOrder.BIG_ENDIAN);
+    int limit = (int) (mapEnd - from);
+    int offset = 0;
+    if (knownStart < 0 && chunk > 0) {
+      offset = findBoundary(buffer, limit, (int) (end - from), mapEnd == fileSize);
+      if (offset < 0) {
+        result.start = -1L;
+        return result;
+      }
+    }
+    result.start = from + offset;
+    while (from + offset < end) {
+      if (offset + MappedPacketReader.RECORD_HEADER_LENGTH > limit) {
+        // only a few trailing bytes after the last record, ignored as the sequential reader does
+        break;
+      }
+      long seconds = readInt(buffer, offset) & 0xFFFFFFFFL;
+      long micros = (readInt(buffer, offset + 4) & 0xFFFFFFFFL) / fractionPerMicro;
+      int capturedLength = readInt(buffer, offset + 8);
+      int data = offset + MappedPacketReader.RECORD_HEADER_LENGTH;
+      if (capturedLength < 0
+              || capturedLength > MappedPacketReader.MAX_RECORD_LENGTH
+              || data + capturedLength > limit) {
+        result.truncated = true;
+        break;
+      }
+      BasicPacketInfo packetInfo = result.next();
+      long timestamp = seconds * 1000000L + micros;
+      result.valid[result.count - 1] =
+              PacketDecoder.decode(
+                      buffer,
+                      data,
+                      capturedLength,
+                      linkType,
+                      timestamp,
+                      readIP4,
+                      readIP6,
+                      packetInfo);
+      offset = data + capturedLength;
+    }
+    result.end = from + offset;
+    return result;
+  }
+
+  // Offset of the first candidate, before the end of the range, followed by a chain of records
+  private int findBoundary(MappedByteBuffer buffer, int limit, int rangeEnd, boolean reachesEof) {
+    for (int candidate = 0; candidate < rangeEnd; candidate++) {
+      int offset = candidate;
+      int records = 0;
+      while (records < CHAIN_LENGTH && isRecordHeader(buffer, offset, limit)) {
+        offset += MappedPacketReader.RECORD_HEADER_LENGTH + readInt(buffer, offset + 8);
+        records++;
+      }
+      if (records == CHAIN_LENGTH || (records > 0 && reachesEof && offset == limit)) {
+        return candidate;
+      }
+    }
+    return -1;
+  }
+
+  private boolean isRecordHeader(MappedByteBuffer buffer, int offset, int limit) {
+    if (offset + MappedPacketReader.RECORD_HEADER_LENGTH > limit) {
+      return false;
+    }
+    long fraction = readInt(buffer, offset + 4) & 0xFFFFFFFFL;
+    int capturedLength = readInt(buffer, offset + 8);
+    int originalLength = readInt(buffer, offset + 12);
+    return fraction < 1000000L * fractionPerMicro
+            && capturedLength >= 0
+            && capturedLength <= snapLength
+            && originalLength >= capturedLength
+            && offset + MappedPacketReader.RECORD_HEADER_LENGTH + capturedLength <= limit;
+  }
+
+  private int readInt(MappedByteBuffer buffer, int index) {
+    int value = buffer.getInt(index);
+    return littleEndian ? Integer.reverseBytes(value) : value;
+  }
+
+  @Override
+  public BasicPacketInfo nextPacket() {
+    BasicPacketInfo packetInfo = new BasicPacketInfo();
+    return nextPacket(packetInfo) ? packetInfo : null;
+  }
+
+  @Override
+  public boolean nextPacket(BasicPacketInfo packetInfo) {
+    while (current == null || index == current.count) {
+      nextChunk();
+    }
+    int i = index++;
+    BasicPacketInfo decoded = current.packets[i];
+    packetInfo.copyFrom(decoded);
+    if (current.valid[i]) {
+      long timestamp = decoded.getTimeStamp();
+      if (this.firstPacket == 0L) this.firstPacket = timestamp / 1000L;
+      this.lastPacket = timestamp / 1000L;
+    }
+    return current.valid[i];
+  }
+
+  private void nextChunk() {
+    if (current != null) {
+      if (current.truncated) {
+        logger.error("Truncated or corrupted record at offset {} on {}", current.end, file);
+        close();
+        throw new PcapClosedException();
+      }
+      expectedStart = current.end;
+      if (digest != null) {
+        // read while the pages of the chunk are still cached
+        digest.follow(expectedStart);
+      }
+      spare.add(current);
+      current = null;
+    }
+    Future<Chunk> future = pending.poll();
+    if (closed || future == null) {
+      logger.debug("Read All packets on {}", file);
+      close();
+      throw new PcapClosedException();
+    }
+    int chunk = submitted - pending.size() - 1;
+    try {
+      Chunk next = future.get();
+      if (next.start != expectedStart) {
+        logger.debug("Chunk {} of {} realigned from {} to {}", chunk, file, next.start,
+                expectedStart);
+        spare.add(next);
+        next = decodeChunk(chunk, expectedStart);
+      }
+      current = next;
+      index = 0;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      close();
+      throw new PcapClosedException();
+    } catch (ExecutionException | IOException e) {
+      logger.error("Error to read chunk " + chunk + " of " + file, e);
+      close();
+      throw new PcapClosedException();
+    }
+    submitChunks();
+  }
+
+  // The SHA-256 of the capture is computed by digest along the reading
+  void setDigest(ContentDigest digest) {
+    this.digest = digest;
+  }
+
+  @Override
+  public void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+    pending.clear();
+    spare.clear();
+    try {
+      channel.close();
+      raf.close();
+    } catch (IOException e) {
+      logger.debug(e.getMessage());
+    }
+  }
+
+  @Override
+  public long getFirstPacket() {
+    return firstPacket;
+  }
+
+  @Override
+  public long getLastPacket() {
+    return lastPacket;
+  }
+
+  // Decoded records of a byte range, reused once the consumer has read them
+  private static final class Chunk {
+    private BasicPacketInfo[] packets = new BasicPacketInfo[0];
+    private boolean[] valid = new boolean[0];
+    private int count;
+    private long start;
+    private long end;
+    private boolean truncated;
+
+    private void clear() {
+      count = 0;
+      truncated = false;
+    }
+
+    private BasicPacketInfo next() {
+      if (count == packets.length) {
+        int capacity = Math.max(1024, packets.length * 2);
+        packets = Arrays.copyOf(packets, capacity);
+        valid = Arrays.copyOf(valid, capacity);
+        for (int i = count; i < capacity; i++) {
+          packets[i] = new BasicPacketInfo();
+        }
+      }
+      return packets[count++];
+    }
+  }
+}
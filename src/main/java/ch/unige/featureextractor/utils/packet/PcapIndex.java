@@ -0,0 +1,187 @@
+/*
+ * Copyright (c)  Benedetto Marco Serinelli
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ch.unige.featureextractor.utils.packet;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Persistent index of the outputs already written: a capture is keyed by a fingerprint of its
+ * content and each extractor by a hash of its properties, so a capture arriving again, even
+ * renamed, is recognized without being read.
+ * The fingerprint hashes the size and SAMPLES blocks spread over the file, about 1 MB whatever
+ * the size of the capture. It is only a prefilter: two captures of the same size may differ
+ * between the samples, so a match is confirmed by the SHA-256 of the whole content, stored with
+ * every output. The entries are appended to a text file, one line per output.
+ */
+public class PcapIndex {
+  private static final Logger logger = LogManager.getLogger(PcapIndex.class);
+  private static final int SAMPLE_SIZE = 64 * 1024;
+  private static final int SAMPLES = 16;
+  private final File file;
+  // by fingerprint, config hash and content hash
+  private final Map<String, File> outputs = new ConcurrentHashMap<>();
+  // the fingerprint and config hash of every output
+  private final Set<String> sampled = ConcurrentHashMap.newKeySet();
+
+  public PcapIndex(File file) {
+    this.file = file;
+    if (file.isFile()) {
+      load();
+    }
+  }
+
+  private void load() {
+    try (BufferedReader reader =
+                 new BufferedReader(
+                         new InputStreamReader(
+                                 new FileInputStream(file), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        // fingerprint, config hash, content hash and output path; the lines written without
+        // the content hash cannot be confirmed and are ignored
+        String[] fields = line.split("\t");
+        if (fields.length == 4) {
+          sampled.add(fields[0] + fields[1]);
+          outputs.put(fields[0] + fields[1] + fields[2], new File(fields[3]));
+        }
+      }
+    } catch (IOException e) {
+      logger.error("Error to load index [" + file + "]", e);
+    }
+  }
+
+  public static String fingerprint(File pcap) throws IOException {
+    MessageDigest digest = sha256();
+    try (FileChannel channel = FileChannel.open(pcap.toPath(), StandardOpenOption.READ)) {
+      long size = channel.size();
+      ByteBuffer buffer = ByteBuffer.allocate(SAMPLE_SIZE);
+      buffer.putLong(size).flip();
+      digest.update(buffer);
+      long last = Math.max(0L, size - SAMPLE_SIZE);
+      long previous = -1L;
+      for (int i = 0; i < SAMPLES; i++) {
+        // the first and the last blocks hold the first and the last timestamps of the capture
+        long offset = last * i / (SAMPLES - 1);
+        if (offset == previous) {
+          continue;
+        }
+        previous = offset;
+        buffer.clear();
+        int read = 0;
+        while (buffer.hasRemaining() && read >= 0) {
+          read = channel.read(buffer, offset + buffer.position());
+        }
+        buffer.flip();
+        digest.update(buffer);
+      }
+    }
+    return toHex(digest.digest());
+  }
+
+  // SHA-256 of the whole capture, read in sequence
+  public static String contentHash(File pcap) throws IOException {
+    return new ContentDigest(pcap).finish();
+  }
+
+  // Every property of the extractor takes part, the ones that do not change the rows included
+  public static String configHash(String extractor, ResourceBundle rb) {
+    MessageDigest digest = sha256();
+    digest.update(extractor.getBytes(StandardCharsets.UTF_8));
+    List<String> keys = new ArrayList<>(rb.keySet());
+    Collections.sort(keys);
+    for (String key : keys) {
+      digest.update((key + "=" + rb.getString(key) + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+    return toHex(digest.digest());
+  }
+
+  // Whether an output may exist for the capture, to be confirmed by lookup with its content hash
+  public boolean mayContain(String fingerprint, String configHash) {
+    return sampled.contains(fingerprint + configHash);
+  }
+
+  // The output written for the same capture and configuration, null if none is left
+  public File lookup(String fingerprint, String configHash, String contentHash) {
+    File output = outputs.get(fingerprint + configHash + contentHash);
+    return output != null && output.isFile() ? output : null;
+  }
+
+  public synchronized void add(
+          String fingerprint, String configHash, String contentHash, File output) {
+    sampled.add(fingerprint + configHash);
+    outputs.put(fingerprint + configHash + contentHash, output);
+    if (file.getParentFile() != null) {
+      file.getParentFile().mkdirs();
+    }
+    try (Writer writer =
+                 new OutputStreamWriter(
+                         new FileOutputStream(file, true), StandardCharsets.UTF_8)) {
+      writer.write(
+              fingerprint
+                      + "\t"
+                      + configHash
+                      + "\t"
+                      + contentHash
+                      + "\t"
+                      + output.getAbsolutePath()
+                      + "\n");
+    } catch (IOException e) {
+      logger.error("Error to update index [" + file + "]", e);
+    }
+  }
+
+  static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  static String toHex(byte[] bytes) {
+    StringBuilder hex = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    return hex.toString();
+  }
+}
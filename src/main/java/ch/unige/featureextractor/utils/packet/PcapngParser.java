@@ -0,0 +1,205 @@
+/*
+ * Copyright (c)  Benedetto Marco Serinelli
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ch.unige.featureextractor.utils.packet;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Parses the blocks of a pcapng capture for the reader engines: the section headers give the
+ * byte order, the interface descriptions the link type and the timestamp resolution of their
+ * packets, the enhanced and the obsolete packet blocks the packets. The other blocks, simple
+ * packets included as they carry no timestamp, are skipped by the readers.
+ */
+final class PcapngParser {
+  static final int SECTION_HEADER_BLOCK = 0x0A0D0D0A;
+  static final int BYTE_ORDER_MAGIC = 0x1A2B3C4D;
+  private static final int INTERFACE_BLOCK = 1;
+  private static final int PACKET_BLOCK = 2;
+  private static final int ENHANCED_PACKET_BLOCK = 6;
+  private static final int OPTION_END = 0;
+  private static final int OPTION_TS_RESOLUTION = 9;
+  private static final int OPTION_TS_OFFSET = 14;
+  // block type and total length, then the byte-order magic of a section header
+  static final int BLOCK_HEADER_LENGTH = 12;
+  // a packet of MAX_RECORD_LENGTH bytes with its block header and options
+  static final int MAX_BLOCK_LENGTH = MappedPacketReader.MAX_RECORD_LENGTH + 65536;
+  private final List<Interface> interfaces = new ArrayList<>();
+  private boolean littleEndian;
+  // the packet of the last packet block read
+  int packetOffset;
+  int packetLength;
+  int packetLinkType;
+  long packetTimestamp;
+
+  private static final class Interface {
+    private final int linkType;
+    private final long unitsPerSecond;
+    // units of 10^-decimals seconds, or of 2^-decimals seconds when binary
+    private final int decimals;
+    private final boolean binary;
+    private final long offsetSeconds;
+
+    private Interface(int linkType, int resolution, long offsetSeconds) {
+      this.linkType = linkType;
+      this.binary = (resolution & 0x80) != 0;
+      this.decimals = resolution & 0x7F;
+      this.unitsPerSecond = binary ? 1L << decimals : pow10(decimals);
+      this.offsetSeconds = offsetSeconds;
+    }
+
+    private long toMicros(long units) {
+      long seconds = Long.divideUnsigned(units, unitsPerSecond);
+      long fraction = Long.remainderUnsigned(units, unitsPerSecond);
+      long micros;
+      if (binary) {
+        micros = (long) (fraction * 1000000.0 / unitsPerSecond);
+      } else if (decimals <= 6) {
+        micros = fraction * pow10(6 - decimals);
+      } else {
+        micros = fraction / pow10(decimals - 6);
+      }
+      return (seconds + offsetSeconds) * 1000000L + micros;
+    }
+  }
+
+  private static long pow10(int exponent) {
+    long value = 1L;
+    for (int i = 0; i < exponent; i++) {
+      value *= 10L;
+    }
+    return value;
+  }
+
+  // The type of the block at buf[index], a section header sets the byte order of its section
+  int blockType(ByteBuffer buf, int index) throws IOException {
+    int type = buf.getInt(index);
+    if (type == SECTION_HEADER_BLOCK) {
+      int byteOrder = buf.getInt(index + 8);
+      if (byteOrder == BYTE_ORDER_MAGIC) {
+        littleEndian = false;
+      } else if (byteOrder == Integer.reverseBytes(BYTE_ORDER_MAGIC)) {
+        littleEndian = true;
+      } else {
+        throw new IOException(String.format("Invalid pcapng byte-order magic 0x%08X", byteOrder));
+      }
+      return type;
+    }
+    return readInt(buf, index);
+  }
+
+  int blockLength(ByteBuffer buf, int index) throws IOException {
+    int length = readInt(buf, index + 4);
+    if (length < BLOCK_HEADER_LENGTH || (length & 3) != 0) {
+      throw new IOException("Invalid pcapng block length " + length);
+    }
+    return length;
+  }
+
+  // Whether readBlock needs the whole block, the other blocks are skipped
+  static boolean isParsed(int type) {
+    return type == SECTION_HEADER_BLOCK
+            || type == INTERFACE_BLOCK
+            || type == PACKET_BLOCK
+            || type == ENHANCED_PACKET_BLOCK;
+  }
+
+  // Reads the block at buf[index, index + length), true when it holds a packet
+  boolean readBlock(ByteBuffer buf, int index, int type, int length) throws IOException {
+    switch (type) {
+      case SECTION_HEADER_BLOCK:
+        // the interface ids start again in each section
+        interfaces.clear();
+        return false;
+      case INTERFACE_BLOCK:
+        readInterface(buf, index, length);
+        return false;
+      case PACKET_BLOCK:
+        return readPacket(buf, index, length, readShort(buf, index + 8));
+      case ENHANCED_PACKET_BLOCK:
+        return readPacket(buf, index, length, readInt(buf, index + 8));
+      default:
+        return false;
+    }
+  }
+
+  private void readInterface(ByteBuffer buf, int index, int length) throws IOException {
+    if (length < 20) {
+      throw new IOException("Invalid pcapng interface block length " + length);
+    }
+    int linkType = readShort(buf, index + 8);
+    int resolution = 6;
+    long offsetSeconds = 0L;
+    int option = index + 16;
+    int end = index + length - 4;
+    while (option + 4 <= end) {
+      int code = readShort(buf, option);
+      int optionLength = readShort(buf, option + 2);
+      if (code == OPTION_END || option + 4 + optionLength > end) {
+        break;
+      }
+      if (code == OPTION_TS_RESOLUTION && optionLength >= 1) {
+        resolution = buf.get(option + 4) & 0xFF;
+      } else if (code == OPTION_TS_OFFSET && optionLength >= 8) {
+        offsetSeconds = readLong(buf, option + 4);
+      }
+      option += 4 + ((optionLength + 3) & ~3);
+    }
+    if ((resolution & 0x80) != 0 ? (resolution & 0x7F) > 62 : resolution > 18) {
+      throw new IOException("Unsupported pcapng timestamp resolution " + resolution);
+    }
+    interfaces.add(new Interface(linkType, resolution, offsetSeconds));
+  }
+
+  private boolean readPacket(ByteBuffer buf, int index, int length, int interfaceId)
+          throws IOException {
+    if (length < 32 || interfaceId < 0 || interfaceId >= interfaces.size()) {
+      throw new IOException("Invalid pcapng packet block");
+    }
+    Interface iface = interfaces.get(interfaceId);
+    int capturedLength = readInt(buf, index + 20);
+    if (capturedLength < 0 || capturedLength > length - 32) {
+      throw new IOException("Invalid pcapng captured length " + capturedLength);
+    }
+    long units = ((readInt(buf, index + 12) & 0xFFFFFFFFL) << 32)
+            | (readInt(buf, index + 16) & 0xFFFFFFFFL);
+    packetOffset = index + 28;
+    packetLength = capturedLength;
+    packetLinkType = iface.linkType;
+    packetTimestamp = iface.toMicros(units);
+    return true;
+  }
+
+  private int readShort(ByteBuffer buf, int index) {
+    short value = buf.getShort(index);
+    return (littleEndian ? Short.reverseBytes(value) : value) & 0xFFFF;
+  }
+
+  private int readInt(ByteBuffer buf, int index) {
+    int value = buf.getInt(index);
+    return littleEndian ? Integer.reverseBytes(value) : value;
+  }
+
+  private long readLong(ByteBuffer buf, int index) {
+    long value = buf.getLong(index);
+    return littleEndian ? Long.reverseBytes(value) : value;
+  }
+}
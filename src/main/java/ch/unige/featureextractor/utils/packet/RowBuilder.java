@@ -0,0 +1,73 @@
+/*
+ * Copyright (c)  Benedetto Marco Serinelli
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ch.unige.featureextractor.utils.packet;
+
+import ch.unige.featureextractor.utils.ExtractorFeaturesModel;
+import ch.unige.featureextractor.utils.Utility;
+import org.jnetpcap.packet.format.FormatUtils;
+
+// Builds a CSV row as a String, the values are separated by ExtractorFeaturesModel.SEPARATOR
+public class RowBuilder implements FeatureWriter {
+  private final StringBuilder row = new StringBuilder(512);
+  private boolean first = true;
+
+  private StringBuilder next() {
+    if (first) {
+      first = false;
+    } else {
+      row.append(ExtractorFeaturesModel.SEPARATOR);
+    }
+    return row;
+  }
+
+  @Override
+  public void writeString(String value) {
+    next().append(value);
+  }
+
+  @Override
+  public void writeLong(long value) {
+    next().append(value);
+  }
+
+  @Override
+  public void writeDouble(double value) {
+    next().append(value);
+  }
+
+  @Override
+  public void writeAddress(long high, long low, int length) {
+    next().append(FormatUtils.ip(BasicPacketInfo.toBytes(high, low, length)));
+  }
+
+  @Override
+  public void writeTimestamp(long epochMillis) {
+    next().append(Utility.convertMilliseconds2String(epochMillis, ColumnPlan.TIMESTAMP_FORMAT));
+  }
+
+  public void reset() {
+    row.setLength(0);
+    first = true;
+  }
+
+  @Override
+  public String toString() {
+    return row.toString();
+  }
+}
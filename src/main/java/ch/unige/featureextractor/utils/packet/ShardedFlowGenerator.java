@@ -0,0 +1,195 @@
+/*
+ * Copyright (c)  Benedetto Marco Serinelli
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ch.unige.featureextractor.utils.packet;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ResourceBundle;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/*
+ * Splits the flow table of one capture among independent FlowGenerator shards, each one on its own
+ * thread. The caller thread decodes and routes every packet by its canonical bidirectional flow
+ * hash, so the packets of a flow always reach the same shard in capture order and the flows are
+ * the same as the ones of a single FlowGenerator.
+ */
+public class ShardedFlowGenerator implements FlowProcessor {
+  private static final Logger logger = LogManager.getLogger(ShardedFlowGenerator.class);
+  private static final int BATCH_SIZE = 1024;
+  private static final int BATCHES_PER_SHARD = 4;
+  private static final Batch END = new Batch(0);
+  private final FlowGenerator[] generators;
+  private final Thread[] workers;
+  private final BlockingQueue<Batch>[] pending;
+  private final BlockingQueue<Batch>[] free;
+  private final Batch[] current;
+  private boolean closed = false;
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  public ShardedFlowGenerator(
+          boolean bidirectional, long flowTimeout, long activityTimeout, int shards) {
+    generators = new FlowGenerator[shards];
+    workers = new Thread[shards];
+    pending = new BlockingQueue[shards];
+    free = new BlockingQueue[shards];
+    current = new Batch[shards];
+    for (int i = 0; i < shards; i++) {
+      generators[i] = new FlowGenerator(bidirectional, flowTimeout, activityTimeout);
+      pending[i] = new ArrayBlockingQueue<>(BATCHES_PER_SHARD + 1);
+      free[i] = new ArrayBlockingQueue<>(BATCHES_PER_SHARD);
+      for (int b = 1; b < BATCHES_PER_SHARD; b++) {
+        free[i].add(new Batch(BATCH_SIZE));
+      }
+      current[i] = new Batch(BATCH_SIZE);
+      final int shard = i;
+      workers[i] = new Thread(() -> work(shard), "FlowShard-" + i);
+      workers[i].start();
+    }
+  }
+
+  private void work(int shard) {
+    FlowGenerator flowGen = generators[shard];
+    try {
+      while (true) {
+        Batch batch = pending[shard].take();
+        if (batch == END) {
+          return;
+        }
+        for (int i = 0; i < batch.size; i++) {
+          try {
+            flowGen.addPacket(batch.packets[i]);
+          } catch (RuntimeException e) {
+            logger.error("Error to add packet on shard " + shard, e);
+          }
+        }
+        batch.size = 0;
+        free[shard].put(batch);
+      }
+    } catch (InterruptedException e) {
+      logger.error("Shard " + shard + " interrupted", e);
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @Override
+  public void addPacket(BasicPacketInfo packet) {
+    if (packet == null) {
+      return;
+    }
+    int shard = (packet.canonicalFlowHash() & Integer.MAX_VALUE) % generators.length;
+    Batch batch = current[shard];
+    batch.packets[batch.size++].copyFrom(packet);
+    if (batch.size == BATCH_SIZE) {
+      try {
+        pending[shard].put(batch);
+        // blocks while the shard is a whole set of batches behind
+        current[shard] = free[shard].take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while routing packets", e);
+      }
+    }
+  }
+
+  @Override
+  public void addFlowListener(FlowGenListener listener) {
+    for (FlowGenerator flowGen : generators) {
+      flowGen.addFlowListener(listener);
+    }
+  }
+
+  @Override
+  public void finishCurrentFlows() {
+    close();
+    for (FlowGenerator flowGen : generators) {
+      flowGen.finishCurrentFlows();
+    }
+  }
+
+  @Override
+  public long dumpLabeledCurrentFlow(String fileFullPath, String header, ResourceBundle rb) {
+    if (fileFullPath == null || header == null) {
+      String ex = String.format("fullFilePath=%s,header=%s", fileFullPath, header);
+      throw new IllegalArgumentException(ex);
+    }
+    close();
+
+    File file = new File(fileFullPath);
+    CsvChannel output = null;
+    long total = 0;
+
+    try {
+      output = new CsvChannel(file);
+      output.writeLine(header);
+      for (FlowGenerator flowGen : generators) {
+        total += flowGen.writeCurrentFlows(output, rb);
+      }
+    } catch (IOException e) {
+      logger.debug(e.getMessage());
+    } finally {
+      try {
+        if (output != null) {
+          output.close();
+        }
+      } catch (IOException e) {
+        logger.debug(e.getMessage());
+      }
+    }
+    return total;
+  }
+
+  // Hands the partial batches to the shards and waits until every packet has been added
+  @Override
+  public void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      for (int i = 0; i < generators.length; i++) {
+        if (current[i].size > 0) {
+          pending[i].put(current[i]);
+        }
+        pending[i].put(END);
+      }
+      for (Thread worker : workers) {
+        worker.join();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      logger.error("Interrupted while closing the shards", e);
+    }
+  }
+
+  private static final class Batch {
+    private final BasicPacketInfo[] packets;
+    private int size;
+
+    private Batch(int capacity) {
+      packets = new BasicPacketInfo[capacity];
+      for (int i = 0; i < capacity; i++) {
+        packets[i] = new BasicPacketInfo();
+      }
+    }
+  }
+}
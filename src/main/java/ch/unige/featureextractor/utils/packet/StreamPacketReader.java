@@ -0,0 +1,267 @@
+/*
+ * Copyright (c)  Benedetto Marco Serinelli
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ch.unige.featureextractor.utils.packet;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jnetpcap.PcapClosedException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+/*
+ * Reader engine for a pcap or pcapng byte stream that cannot be mapped or read twice, such as
+ * stdin or a named pipe fed by tcpdump -w -. The records are parsed from a buffer refilled from
+ * the stream, a read returns as soon as some bytes are available so the packets flow without
+ * waiting for a full buffer. A record cut by the end of the stream is dropped.
+ */
+public class StreamPacketReader implements PacketSource {
+  private static final Logger logger = LogManager.getLogger(StreamPacketReader.class);
+  private static final int BUFFER_SIZE = 1024 * 1024;
+  private final boolean readIP6;
+  private final boolean readIP4;
+  private final String name;
+  private final ReadableByteChannel channel;
+  private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+  private boolean littleEndian;
+  private int linkType;
+  // fraction of second of a record per microsecond, 1000 in a nanosecond pcap
+  private long fractionPerMicro = 1L;
+  // null for a classic pcap
+  private PcapngParser pcapng;
+  private long firstPacket;
+  private long lastPacket;
+
+  public StreamPacketReader(InputStream input, String name, boolean readip4, boolean readip6)
+          throws IOException {
+    super();
+    this.readIP4 = readip4;
+    this.readIP6 = readip6;
+    this.name = name;
+    logger.info(name);
+    this.channel = Channels.newChannel(input);
+    buffer.limit(0);
+    try {
+      readGlobalHeader();
+    } catch (IOException e) {
+      close();
+      throw e;
+    }
+  }
+
+  private void readGlobalHeader() throws IOException {
+    if (!fill(PcapngParser.BLOCK_HEADER_LENGTH)) {
+      throw new IOException("Stream too short to be a pcap [" + name + "]");
+    }
+    int header = buffer.position();
+    String format = CaptureFormat.of(buffer, header);
+    int magic = buffer.getInt(header);
+    if (CaptureFormat.PCAPNG.equals(format)) {
+      // the blocks are parsed from the section header on
+      pcapng = new PcapngParser();
+      return;
+    } else if (format == null) {
+      throw new IOException(String.format("Unsupported pcap magic 0x%08X [%s]", magic, name));
+    } else if (!fill(MappedPacketReader.GLOBAL_HEADER_LENGTH)) {
+      throw new IOException("Stream too short to be a pcap [" + name + "]");
+    }
+    header = buffer.position();
+    littleEndian = CaptureFormat.isLittleEndian(magic);
+    fractionPerMicro = CaptureFormat.PCAP_NANO.equals(format) ? 1000L : 1L;
+    linkType = readInt(header + 20) & 0x0FFFFFFF;
+    if (!PacketDecoder.isSupportedLinkType(linkType)) {
+      throw new IOException("Unsupported link type " + linkType + " [" + name + "]");
+    }
+    buffer.position(header + MappedPacketReader.GLOBAL_HEADER_LENGTH);
+  }
+
+  @Override
+  public BasicPacketInfo nextPacket() {
+    BasicPacketInfo packetInfo = new BasicPacketInfo();
+    return nextPacket(packetInfo) ? packetInfo : null;
+  }
+
+  @Override
+  public boolean nextPacket(BasicPacketInfo packetInfo) {
+    if (pcapng != null) {
+      return nextBlockPacket(packetInfo);
+    }
+    boolean valid;
+    try {
+      if (!fill(MappedPacketReader.RECORD_HEADER_LENGTH)) {
+        if (buffer.hasRemaining()) {
+          logger.debug("Truncated last record on {}", name);
+        }
+        logger.debug("Read All packets on {}", name);
+        close();
+        throw new PcapClosedException();
+      }
+      int header = buffer.position();
+      long seconds = readInt(header) & 0xFFFFFFFFL;
+      long micros = (readInt(header + 4) & 0xFFFFFFFFL) / fractionPerMicro;
+      int capturedLength = readInt(header + 8);
+      if (capturedLength < 0 || capturedLength > MappedPacketReader.MAX_RECORD_LENGTH) {
+        logger.error("Corrupted record on {}", name);
+        close();
+        throw new PcapClosedException();
+      }
+      if (!fill(MappedPacketReader.RECORD_HEADER_LENGTH + capturedLength)) {
+        logger.debug("Truncated last record on {}", name);
+        close();
+        throw new PcapClosedException();
+      }
+      // the buffer may have been compacted by the refill
+      int data = buffer.position() + MappedPacketReader.RECORD_HEADER_LENGTH;
+      buffer.position(data + capturedLength);
+
+      long timestamp = seconds * 1000000L + micros;
+      valid =
+              PacketDecoder.decode(
+                      buffer,
+                      data,
+                      capturedLength,
+                      linkType,
+                      timestamp,
+                      readIP4,
+                      readIP6,
+                      packetInfo);
+      if (valid) {
+        if (this.firstPacket == 0L) this.firstPacket = timestamp / 1000L;
+        this.lastPacket = timestamp / 1000L;
+      }
+    } catch (IOException e) {
+      logger.error("Error to read " + name, e);
+      close();
+      throw new PcapClosedException();
+    }
+    return valid;
+  }
+
+  // Skips the blocks that are not packets, a block cut by the end of the stream is dropped
+  private boolean nextBlockPacket(BasicPacketInfo packetInfo) {
+    try {
+      while (fill(PcapngParser.BLOCK_HEADER_LENGTH)) {
+        int index = buffer.position();
+        int type = pcapng.blockType(buffer, index);
+        int length = pcapng.blockLength(buffer, index);
+        if (!PcapngParser.isParsed(type)) {
+          if (!skip(length)) {
+            break;
+          }
+          continue;
+        }
+        if (length > PcapngParser.MAX_BLOCK_LENGTH) {
+          throw new IOException("Block of " + length + " bytes");
+        }
+        if (!fill(length)) {
+          break;
+        }
+        // the buffer may have been compacted by the refill
+        index = buffer.position();
+        buffer.position(index + length);
+        if (pcapng.readBlock(buffer, index, type, length)) {
+          long timestamp = pcapng.packetTimestamp;
+          boolean valid =
+                  PacketDecoder.decode(
+                          buffer,
+                          pcapng.packetOffset,
+                          pcapng.packetLength,
+                          pcapng.packetLinkType,
+                          timestamp,
+                          readIP4,
+                          readIP6,
+                          packetInfo);
+          if (valid) {
+            if (this.firstPacket == 0L) this.firstPacket = timestamp / 1000L;
+            this.lastPacket = timestamp / 1000L;
+          }
+          return valid;
+        }
+      }
+    } catch (IOException e) {
+      logger.error("Error to read " + name, e);
+      close();
+      throw new PcapClosedException();
+    }
+    if (buffer.hasRemaining()) {
+      logger.debug("Truncated last block on {}", name);
+    }
+    logger.debug("Read All packets on {}", name);
+    close();
+    throw new PcapClosedException();
+  }
+
+  // Drops count bytes of the stream, false when it ends before
+  private boolean skip(long count) throws IOException {
+    while (count > 0) {
+      if (!fill(1)) {
+        return false;
+      }
+      int size = (int) Math.min(count, buffer.remaining());
+      buffer.position(buffer.position() + size);
+      count -= size;
+    }
+    return true;
+  }
+
+  // Reads the stream until count bytes are buffered, false when it ends before
+  private boolean fill(int count) throws IOException {
+    if (buffer.remaining() >= count) {
+      return true;
+    }
+    buffer.compact();
+    try {
+      while (buffer.position() < count) {
+        if (channel.read(buffer) < 0) {
+          return false;
+        }
+      }
+    } finally {
+      buffer.flip();
+    }
+    return true;
+  }
+
+  private int readInt(int index) {
+    int value = buffer.getInt(index);
+    return littleEndian ? Integer.reverseBytes(value) : value;
+  }
+
+  @Override
+  public void close() {
+    try {
+      channel.close();
+    } catch (IOException e) {
+      logger.debug(e.getMessage());
+    }
+  }
+
+  @Override
+  public long getFirstPacket() {
+    return firstPacket;
+  }
+
+  @Override
+  public long getLastPacket() {
+    return lastPacket;
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c)  Benedetto Marco Serinelli
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ch.unige.featureextractor.utils.packet;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/*
+ * Reads a file that is still being written: at the end of the file the read waits for new bytes
+ * instead of returning -1. The end of the stream is reached once the file is rotated (the path
+ * points to another file, is deleted or is truncated) and the bytes written before are read, or
+ * as soon as stop() is called.
+ */
+public class TailInputStream extends InputStream {
+  private static final Logger logger = LogManager.getLogger(TailInputStream.class);
+  private final Path path;
+  private final long pollMillis;
+  private final FileChannel channel;
+  private final Object fileKey;
+  private volatile Runnable idleListener;
+  private volatile boolean stopped;
+
+  public TailInputStream(File file, long pollMillis) throws IOException {
+    this.path = file.toPath();
+    this.pollMillis = pollMillis;
+    this.channel = FileChannel.open(path, StandardOpenOption.READ);
+    this.fileKey = getFileKey(Files.readAttributes(path, BasicFileAttributes.class));
+  }
+
+  // the inode where the platform has one, the creation time otherwise
+  private static Object getFileKey(BasicFileAttributes attributes) {
+    return attributes.fileKey() != null ? attributes.fileKey() : attributes.creationTime();
+  }
+
+  // Called each time the read waits for the file to grow
+  public void setIdleListener(Runnable idleListener) {
+    this.idleListener = idleListener;
+  }
+
+  public void stop() {
+    stopped = true;
+  }
+
+  @Override
+  public int read() throws IOException {
+    byte[] single = new byte[1];
+    return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+  }
+
+  @Override
+  public int read(byte[] bytes, int offset, int length) throws IOException {
+    if (length == 0) {
+      return 0;
+    }
+    while (!stopped) {
+      int count = channel.read(ByteBuffer.wrap(bytes, offset, length));
+      if (count > 0) {
+        return count;
+      }
+      if (isRotated()) {
+        // the bytes appended before the rotation are still read
+        count = channel.read(ByteBuffer.wrap(bytes, offset, length));
+        if (count <= 0) {
+          logger.info("Stop tailing [{}]", path);
+        }
+        return count > 0 ? count : -1;
+      }
+      Runnable listener = idleListener;
+      if (listener != null) {
+        listener.run();
+      }
+      try {
+        Thread.sleep(pollMillis);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while tailing " + path);
+      }
+    }
+    logger.info("Stop tailing [{}]", path);
+    return -1;
+  }
+
+  private boolean isRotated() throws IOException {
+    try {
+      BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+      return !fileKey.equals(getFileKey(attributes)) || attributes.size() < channel.position();
+    } catch (NoSuchFileException e) {
+      return true;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c)  Benedetto Marco Serinelli
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ch.unige.featureextractor.utils.packet;
+
+import java.util.Random;
+
+/*
+ * A distribution of the traffic generator written as kind:parameters, for example
+ * constant:100, uniform:0:1460, exponential:10000, lognormal:500000:1.5 (median and sigma) or
+ * pareto:1000:1.2 (minimum and shape).
+ */
+final class TrafficDistribution {
+  private static final String CONSTANT = "constant";
+  private static final String UNIFORM = "uniform";
+  private static final String EXPONENTIAL = "exponential";
+  private static final String LOGNORMAL = "lognormal";
+  private static final String PARETO = "pareto";
+  private final String kind;
+  private final double first;
+  private final double second;
+
+  private TrafficDistribution(String kind, double first, double second) {
+    this.kind = kind;
+    this.first = first;
+    this.second = second;
+  }
+
+  static TrafficDistribution parse(String spec) {
+    String[] parts = spec.trim().split(":");
+    int parameters;
+    switch (parts[0]) {
+      case CONSTANT:
+      case EXPONENTIAL:
+        parameters = 1;
+        break;
+      case UNIFORM:
+      case LOGNORMAL:
+      case PARETO:
+        parameters = 2;
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown distribution [" + spec + "]");
+    }
+    if (parts.length != parameters + 1) {
+      throw new IllegalArgumentException("Expected " + parameters + " parameters [" + spec + "]");
+    }
+    double first = Double.parseDouble(parts[1]);
+    double second = parameters > 1 ? Double.parseDouble(parts[2]) : 0.0;
+    if (first < 0 || second < 0 || (PARETO.equals(parts[0]) && second == 0)) {
+      throw new IllegalArgumentException("Invalid parameters [" + spec + "]");
+    }
+    return new TrafficDistribution(parts[0], first, second);
+  }
+
+  double sample(Random random) {
+    switch (kind) {
+      case UNIFORM:
+        return first + random.nextDouble() * (second - first);
+      case EXPONENTIAL:
+        return -first * Math.log(1.0 - random.nextDouble());
+      case LOGNORMAL:
+        return first * Math.exp(second * random.nextGaussian());
+      case PARETO:
+        return first / Math.pow(1.0 - random.nextDouble(), 1.0 / second);
+      default:
+        return first;
+    }
+  }
+
+  // A rounded sample clamped to [min, max]
+  long sample(Random random, long min, long max) {
+    double value = Math.rint(sample(random));
+    return value < min ? min : value > max ? max : (long) value;
+  }
+}
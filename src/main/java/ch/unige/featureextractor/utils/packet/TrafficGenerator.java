@@ -0,0 +1,423 @@
+/*
+ * Copyright (c)  Benedetto Marco Serinelli
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ch.unige.featureextractor.utils.packet;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.ResourceBundle;
+
+/*
+ * Deterministic synthetic IPv4 Ethernet traffic: the same profile and seed give the same capture.
+ * A fixed number of flows is open at any time, each one in a slot that takes a new flow as soon
+ * as its flow closes. The slots are kept in a heap ordered by the time of their next packet, so
+ * the packets come out in time order whatever the number of flows. A TCP flow opens with the
+ * three-way handshake, sends until its duration is over and ends with a FIN exchange, a RST or
+ * nothing, left to the flow timeout; a SYN flood flow is a SYN from a spoofed address answered
+ * by a SYN-ACK that is never acknowledged.
+ */
+public class TrafficGenerator {
+  public static final String PCAPNG_EXTENSION = ".pcapng";
+  private static final int ETHERNET_HEADER = 14;
+  private static final int IPV4_HEADER = 20;
+  private static final int TCP_HEADER = 20;
+  private static final int UDP_HEADER = 8;
+  private static final int MAX_TCP_PAYLOAD = 1460;
+  private static final int MAX_UDP_PAYLOAD = 1472;
+  private static final int MAX_FRAME = ETHERNET_HEADER + IPV4_HEADER + TCP_HEADER + MAX_TCP_PAYLOAD;
+  private static final byte PROTO_TCP = 6;
+  private static final byte PROTO_UDP = 17;
+  private static final int FIN = 0x01;
+  private static final int SYN = 0x02;
+  private static final int RST = 0x04;
+  private static final int PSH = 0x08;
+  private static final int ACK = 0x10;
+
+  private static final byte SYN_SENT = 0;
+  private static final byte SYN_RECEIVED = 1;
+  private static final byte HANDSHAKE_ACK = 2;
+  private static final byte DATA = 3;
+  private static final byte FIN_SENT = 4;
+  private static final byte FIN_RECEIVED = 5;
+  private static final byte LAST_ACK = 6;
+  private static final byte RESET = 7;
+  private static final byte CLOSED = 8;
+
+  private static final byte END_TIMEOUT = 0;
+  private static final byte END_FIN = 1;
+  private static final byte END_RST = 2;
+  private static final byte END_FLOOD = 3;
+
+  // the clients are 10.0.0.0/8, one port each of 64000 per flow number, the servers 192.168.0.0/16
+  private static final int CLIENT_NETWORK = 0x0A000000;
+  private static final int SERVER_NETWORK = 0xC0A80000;
+  private static final int CLIENT_PORTS = 64000;
+  private static final int FIRST_CLIENT_PORT = 1024;
+  private static final int[] TCP_SERVICES = {80, 443, 22, 25, 8080};
+  private static final int[] UDP_SERVICES = {53, 123, 443, 5353};
+
+  private final TrafficProfile profile;
+  private final Random random;
+  private final long[] nextTime;
+  private final long[] endTime;
+  private final int[] client;
+  private final int[] server;
+  private final int[] clientPort;
+  private final int[] serverPort;
+  private final int[] clientSeq;
+  private final int[] serverSeq;
+  private final byte[] protocol;
+  private final byte[] phase;
+  private final byte[] ending;
+  private final boolean[] serverCloses;
+  private final int[] heap;
+  private int heapSize;
+  private long flowsStarted;
+  private long packetsGenerated;
+  private short ipId;
+  // big-endian as the network headers, the payload bytes are all 0
+  private final ByteBuffer frame = ByteBuffer.allocate(MAX_FRAME);
+  private int frameLength;
+  private long timestamp;
+
+  public TrafficGenerator(ResourceBundle rb) {
+    this(TrafficProfile.of(rb));
+  }
+
+  TrafficGenerator(TrafficProfile profile) {
+    this.profile = profile;
+    this.random = new Random(profile.seed);
+    int slots = profile.concurrentFlows;
+    nextTime = new long[slots];
+    endTime = new long[slots];
+    client = new int[slots];
+    server = new int[slots];
+    clientPort = new int[slots];
+    serverPort = new int[slots];
+    clientSeq = new int[slots];
+    serverSeq = new int[slots];
+    protocol = new byte[slots];
+    phase = new byte[slots];
+    ending = new byte[slots];
+    serverCloses = new boolean[slots];
+    heap = new int[slots];
+    long start = profile.startSeconds * 1000000L;
+    for (int slot = 0; slot < slots && hasFlowsLeft(); slot++) {
+      startFlow(slot, start + gap());
+      heap[heapSize] = slot;
+      siftUp(heapSize++);
+    }
+  }
+
+  // Builds the frame of the next packet, false once the flows or the packets are all generated
+  public boolean next() {
+    if (heapSize == 0 || (profile.packets > 0 && packetsGenerated >= profile.packets)) {
+      return false;
+    }
+    int slot = heap[0];
+    timestamp = nextTime[slot];
+    emit(slot);
+    packetsGenerated++;
+    if (phase[slot] != CLOSED) {
+      nextTime[slot] = timestamp + gap();
+    } else if (hasFlowsLeft()) {
+      startFlow(slot, timestamp + gap());
+    } else {
+      heap[0] = heap[--heapSize];
+    }
+    siftDown(0);
+    return true;
+  }
+
+  // Writes the whole capture, as pcapng when the file name ends with .pcapng, else as pcap
+  public long write(File output) throws IOException {
+    boolean pcapng = output.getName().endsWith(PCAPNG_EXTENSION);
+    ByteBuffer header = ByteBuffer.allocate(32).order(ByteOrder.LITTLE_ENDIAN);
+    try (OutputStream out = new BufferedOutputStream(new FileOutputStream(output), 1 << 16)) {
+      if (pcapng) {
+        // section header of unknown length, then one Ethernet interface in microseconds
+        header.putInt(PcapngParser.SECTION_HEADER_BLOCK).putInt(28);
+        header.putInt(PcapngParser.BYTE_ORDER_MAGIC).putShort((short) 1).putShort((short) 0);
+        header.putLong(-1L).putInt(28);
+        flush(header, out);
+        header.putInt(1).putInt(20).putShort((short) PacketDecoder.LINKTYPE_ETHERNET);
+        header.putShort((short) 0).putInt(profile.snapLength).putInt(20);
+        flush(header, out);
+      } else {
+        header.putInt(0xA1B2C3D4).putShort((short) 2).putShort((short) 4).putInt(0).putInt(0);
+        header.putInt(profile.snapLength).putInt(PacketDecoder.LINKTYPE_ETHERNET);
+        flush(header, out);
+      }
+      while (next()) {
+        int captured = getCapturedLength();
+        int padding = pcapng ? -captured & 3 : 0;
+        if (pcapng) {
+          header.putInt(6).putInt(32 + captured + padding).putInt(0);
+          header.putInt((int) (timestamp >>> 32)).putInt((int) timestamp);
+        } else {
+          header.putInt((int) (timestamp / 1000000L)).putInt((int) (timestamp % 1000000L));
+        }
+        header.putInt(captured).putInt(frameLength);
+        flush(header, out);
+        out.write(frame.array(), 0, captured);
+        if (pcapng) {
+          header.putInt(0, 0).position(padding);
+          header.putInt(32 + captured + padding);
+          flush(header, out);
+        }
+      }
+    }
+    return packetsGenerated;
+  }
+
+  private static void flush(ByteBuffer header, OutputStream out) throws IOException {
+    out.write(header.array(), 0, header.position());
+    header.clear();
+  }
+
+  public ByteBuffer getFrame() {
+    return frame;
+  }
+
+  public int getFrameLength() {
+    return frameLength;
+  }
+
+  public int getCapturedLength() {
+    return Math.min(frameLength, profile.snapLength);
+  }
+
+  // Microseconds since the epoch of the current packet
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  public long getFlows() {
+    return flowsStarted;
+  }
+
+  public long getPackets() {
+    return packetsGenerated;
+  }
+
+  private boolean hasFlowsLeft() {
+    return profile.flows <= 0 || flowsStarted < profile.flows;
+  }
+
+  private long gap() {
+    return profile.interArrival.sample(random, 1L, Integer.MAX_VALUE);
+  }
+
+  private void startFlow(int slot, long time) {
+    long flow = flowsStarted++;
+    boolean tcp = random.nextDouble() < profile.tcpRatio;
+    TrafficDistribution duration =
+            random.nextDouble() < profile.longFlowRatio
+                    ? profile.longFlowDuration
+                    : profile.flowDuration;
+    nextTime[slot] = time;
+    endTime[slot] = time + duration.sample(random, 0L, Long.MAX_VALUE / 4);
+    protocol[slot] = tcp ? PROTO_TCP : PROTO_UDP;
+    phase[slot] = tcp ? SYN_SENT : DATA;
+    clientSeq[slot] = random.nextInt();
+    serverSeq[slot] = random.nextInt();
+    serverCloses[slot] = random.nextBoolean();
+    if (tcp && random.nextDouble() < profile.synFloodRatio) {
+      client[slot] = random.nextInt();
+      clientPort[slot] = FIRST_CLIENT_PORT + random.nextInt(CLIENT_PORTS);
+      server[slot] = SERVER_NETWORK;
+      serverPort[slot] = TCP_SERVICES[0];
+      ending[slot] = END_FLOOD;
+      return;
+    }
+    client[slot] = CLIENT_NETWORK | (int) ((flow / CLIENT_PORTS) & 0xFFFFFF);
+    clientPort[slot] = FIRST_CLIENT_PORT + (int) (flow % CLIENT_PORTS);
+    server[slot] = SERVER_NETWORK | random.nextInt(Math.min(profile.servers, 65536));
+    int[] services = tcp ? TCP_SERVICES : UDP_SERVICES;
+    serverPort[slot] = services[random.nextInt(services.length)];
+    double end = random.nextDouble();
+    if (!tcp || end >= profile.finRatio + profile.rstRatio) {
+      ending[slot] = END_TIMEOUT;
+    } else {
+      ending[slot] = end < profile.finRatio ? END_FIN : END_RST;
+    }
+  }
+
+  private void emit(int slot) {
+    boolean tcp = protocol[slot] == PROTO_TCP;
+    boolean forward;
+    int flags = ACK;
+    int payload = 0;
+    switch (phase[slot]) {
+      case SYN_SENT:
+        forward = true;
+        flags = SYN;
+        phase[slot] = SYN_RECEIVED;
+        break;
+      case SYN_RECEIVED:
+        forward = false;
+        flags = SYN | ACK;
+        phase[slot] = ending[slot] == END_FLOOD ? CLOSED : HANDSHAKE_ACK;
+        break;
+      case HANDSHAKE_ACK:
+        forward = true;
+        phase[slot] = DATA;
+        break;
+      case DATA:
+        forward = random.nextDouble() < profile.forwardRatio;
+        payload =
+                (int) profile.payloadBytes.sample(
+                        random, 0L, tcp ? MAX_TCP_PAYLOAD : MAX_UDP_PAYLOAD);
+        if (payload > 0) {
+          flags |= PSH;
+        }
+        if (timestamp >= endTime[slot]) {
+          if (ending[slot] == END_FIN) {
+            phase[slot] = FIN_SENT;
+          } else if (ending[slot] == END_RST) {
+            phase[slot] = RESET;
+          } else {
+            phase[slot] = CLOSED;
+          }
+        }
+        break;
+      case FIN_SENT:
+        forward = !serverCloses[slot];
+        flags = FIN | ACK;
+        phase[slot] = FIN_RECEIVED;
+        break;
+      case FIN_RECEIVED:
+        forward = serverCloses[slot];
+        flags = FIN | ACK;
+        phase[slot] = LAST_ACK;
+        break;
+      case LAST_ACK:
+        forward = !serverCloses[slot];
+        phase[slot] = CLOSED;
+        break;
+      default:
+        forward = random.nextBoolean();
+        flags = RST | ACK;
+        phase[slot] = CLOSED;
+        break;
+    }
+    buildFrame(slot, tcp, forward, flags, payload);
+  }
+
+  private void buildFrame(int slot, boolean tcp, boolean forward, int flags, int payload) {
+    int transportHeader = tcp ? TCP_HEADER : UDP_HEADER;
+    int ipLength = IPV4_HEADER + transportHeader + payload;
+    frameLength = ETHERNET_HEADER + ipLength;
+
+    // locally administered MAC addresses, the client side ending in 1
+    frame.putInt(0, 0x02000000);
+    frame.putShort(4, (short) (forward ? 2 : 1));
+    frame.putInt(6, 0x02000000);
+    frame.putShort(10, (short) (forward ? 1 : 2));
+    frame.putShort(12, (short) 0x0800);
+
+    int ip = ETHERNET_HEADER;
+    frame.putShort(ip, (short) 0x4500);
+    frame.putShort(ip + 2, (short) ipLength);
+    frame.putShort(ip + 4, ipId++);
+    frame.putShort(ip + 6, (short) 0x4000);
+    frame.put(ip + 8, (byte) 64);
+    frame.put(ip + 9, protocol[slot]);
+    frame.putShort(ip + 10, (short) 0);
+    frame.putInt(ip + 12, forward ? client[slot] : server[slot]);
+    frame.putInt(ip + 16, forward ? server[slot] : client[slot]);
+    frame.putShort(ip + 10, ipChecksum(ip));
+
+    int l4 = ip + IPV4_HEADER;
+    frame.putShort(l4, (short) (forward ? clientPort[slot] : serverPort[slot]));
+    frame.putShort(l4 + 2, (short) (forward ? serverPort[slot] : clientPort[slot]));
+    if (!tcp) {
+      frame.putShort(l4 + 4, (short) (UDP_HEADER + payload));
+      // no UDP checksum, allowed over IPv4
+      frame.putShort(l4 + 6, (short) 0);
+      // the frame is reused, the payload starts where the header of a TCP frame went on
+      Arrays.fill(frame.array(), l4 + UDP_HEADER, l4 + TCP_HEADER, (byte) 0);
+      return;
+    }
+    int seq = forward ? clientSeq[slot] : serverSeq[slot];
+    int ack = (flags & ACK) != 0 ? (forward ? serverSeq[slot] : clientSeq[slot]) : 0;
+    int next = seq + payload + ((flags & (SYN | FIN)) != 0 ? 1 : 0);
+    if (forward) {
+      clientSeq[slot] = next;
+    } else {
+      serverSeq[slot] = next;
+    }
+    frame.putInt(l4 + 4, seq);
+    frame.putInt(l4 + 8, ack);
+    frame.put(l4 + 12, (byte) 0x50);
+    frame.put(l4 + 13, (byte) flags);
+    frame.putShort(l4 + 14, (short) 65535);
+    // the TCP checksum is not computed, the extractors do not check it
+    frame.putInt(l4 + 16, 0);
+  }
+
+  private short ipChecksum(int ip) {
+    int sum = 0;
+    for (int i = 0; i < IPV4_HEADER; i += 2) {
+      sum += frame.getShort(ip + i) & 0xFFFF;
+    }
+    sum = (sum & 0xFFFF) + (sum >>> 16);
+    sum += sum >>> 16;
+    return (short) ~sum;
+  }
+
+  private void siftUp(int index) {
+    int slot = heap[index];
+    while (index > 0) {
+      int parent = (index - 1) >>> 1;
+      if (nextTime[heap[parent]] <= nextTime[slot]) {
+        break;
+      }
+      heap[index] = heap[parent];
+      index = parent;
+    }
+    heap[index] = slot;
+  }
+
+  private void siftDown(int index) {
+    if (heapSize == 0) {
+      return;
+    }
+    int slot = heap[index];
+    int half = heapSize >>> 1;
+    while (index < half) {
+      int child = 2 * index + 1;
+      if (child + 1 < heapSize && nextTime[heap[child + 1]] < nextTime[heap[child]]) {
+        child++;
+      }
+      if (nextTime[slot] <= nextTime[heap[child]]) {
+        break;
+      }
+      heap[index] = heap[child];
+      index = child;
+    }
+    heap[index] = slot;
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c)  Benedetto Marco Serinelli
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ch.unige.featureextractor.utils.packet;
+
+import ch.unige.featureextractor.utils.Utility;
+import java.util.ResourceBundle;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/*
+ * Settings of the traffic generator, read from the generator.* keys of a profile. The sizes are
+ * TCP or UDP payload bytes, the times microseconds, the ratios fractions between 0 and 1.
+ */
+final class TrafficProfile {
+  private static final Logger logger = LogManager.getLogger(TrafficProfile.class);
+  long seed = 1L;
+  // flows generated in total and open at the same time, 0 flows for no limit
+  long flows = 10000L;
+  int concurrentFlows = 1000;
+  // stops the capture after this many packets, 0 for no limit
+  long packets = 0L;
+  double tcpRatio = 0.8;
+  // TCP flows made of a SYN from a spoofed address to the first server and its SYN-ACK
+  double synFloodRatio = 0.0;
+  double forwardRatio = 0.6;
+  TrafficDistribution payloadBytes = TrafficDistribution.parse("uniform:0:1460");
+  TrafficDistribution interArrival = TrafficDistribution.parse("exponential:100000");
+  TrafficDistribution flowDuration = TrafficDistribution.parse("lognormal:500000:1.5");
+  double longFlowRatio = 0.01;
+  TrafficDistribution longFlowDuration = TrafficDistribution.parse("constant:300000000");
+  // how the TCP flows end, the others stop sending and are left to the flow timeout
+  double finRatio = 0.8;
+  double rstRatio = 0.1;
+  int servers = 256;
+  int snapLength = 65535;
+  long startSeconds = 1500000000L;
+
+  static TrafficProfile of(ResourceBundle rb) {
+    TrafficProfile profile = new TrafficProfile();
+    profile.seed = getLong(rb, "generator.seed", profile.seed);
+    profile.flows = getLong(rb, "generator.flows", profile.flows);
+    profile.concurrentFlows =
+            (int) Math.max(1L, getLong(rb, "generator.flows.concurrent", profile.concurrentFlows));
+    profile.packets = getLong(rb, "generator.packets", profile.packets);
+    profile.tcpRatio = getDouble(rb, "generator.tcp.ratio", profile.tcpRatio);
+    profile.synFloodRatio = getDouble(rb, "generator.syn.flood.ratio", profile.synFloodRatio);
+    profile.forwardRatio = getDouble(rb, "generator.forward.ratio", profile.forwardRatio);
+    profile.payloadBytes = getDistribution(rb, "generator.payload.bytes", profile.payloadBytes);
+    profile.interArrival = getDistribution(rb, "generator.interarrival.us", profile.interArrival);
+    profile.flowDuration = getDistribution(rb, "generator.flow.duration.us", profile.flowDuration);
+    profile.longFlowRatio = getDouble(rb, "generator.long.flow.ratio", profile.longFlowRatio);
+    profile.longFlowDuration =
+            getDistribution(rb, "generator.long.flow.duration.us", profile.longFlowDuration);
+    profile.finRatio = getDouble(rb, "generator.tcp.fin.ratio", profile.finRatio);
+    profile.rstRatio = getDouble(rb, "generator.tcp.rst.ratio", profile.rstRatio);
+    profile.servers = (int) Math.max(1L, getLong(rb, "generator.servers", profile.servers));
+    profile.snapLength = (int) Math.max(1L, getLong(rb, "generator.snaplen", profile.snapLength));
+    profile.startSeconds = getLong(rb, "generator.start.seconds", profile.startSeconds);
+    return profile;
+  }
+
+  private static long getLong(ResourceBundle rb, String key, long defaultValue) {
+    String value = Utility.getProperty(rb, key, String.valueOf(defaultValue));
+    try {
+      return Long.parseLong(value);
+    } catch (NumberFormatException e) {
+      logger.warn("Invalid " + key + " [" + value + "], use " + defaultValue);
+      return defaultValue;
+    }
+  }
+
+  private static double getDouble(ResourceBundle rb, String key, double defaultValue) {
+    String value = Utility.getProperty(rb, key, String.valueOf(defaultValue));
+    try {
+      return Double.parseDouble(value);
+    } catch (NumberFormatException e) {
+      logger.warn("Invalid " + key + " [" + value + "], use " + defaultValue);
+      return defaultValue;
+    }
+  }
+
+  private static TrafficDistribution getDistribution(
+          ResourceBundle rb, String key, TrafficDistribution defaultValue) {
+    String value = Utility.getProperty(rb, key, null);
+    if (value == null) {
+      return defaultValue;
+    }
+    try {
+      return TrafficDistribution.parse(value);
+    } catch (IllegalArgumentException e) {
+      logger.warn("Invalid " + key + " [" + value + "], use the default", e);
+      return defaultValue;
+    }
+  }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (c)  Benedetto Marco Serinelli
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ch.unige.featureextractor.utils.file;
+
+import static org.junit.Assert.assertEquals;
+
+import ch.unige.featureextractor.utils.packet.TrafficGenerator;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.PropertyResourceBundle;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BatchExtractorTest {
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void countsTheCapturesThatCannotBeRead() throws IOException {
+    File batch = folder.newFolder("batch");
+    PropertyResourceBundle profile =
+            new PropertyResourceBundle(
+                    new StringReader("generator.flows=20\ngenerator.flows.concurrent=5\n"));
+    new TrafficGenerator(profile).write(new File(batch, "good.pcap"));
+    // a pcap header with an unknown link type: recognized as a pcap, rejected by the reader
+    try (DataOutputStream out =
+                 new DataOutputStream(new FileOutputStream(new File(batch, "bad.pcap")))) {
+      out.writeInt(0xA1B2C3D4);
+      out.writeShort(2);
+      out.writeShort(4);
+      out.writeInt(0);
+      out.writeInt(0);
+      out.writeInt(65535);
+      out.writeInt(9999);
+    }
+
+    int failed =
+            new BatchExtractor(2).run(Collections.singletonList(batch.getAbsolutePath()));
+    assertEquals(1, failed);
+  }
+}
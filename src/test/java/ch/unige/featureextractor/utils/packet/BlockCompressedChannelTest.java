@@ -0,0 +1,82 @@
+/*
+ * Copyright (c)  Benedetto Marco Serinelli
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ch.unige.featureextractor.utils.packet;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.GZIPInputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BlockCompressedChannelTest {
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void flushWritesThePartialBlock() throws IOException {
+    File file = folder.newFile("rows.csv.gz");
+    BlockCompressedChannel channel =
+            new BlockCompressedChannel(file, BlockCompressedChannel.GZIP, 1024);
+    try {
+      channel.write(ByteBuffer.wrap("first row\n".getBytes()));
+      assertEquals(0L, file.length());
+      channel.flush();
+      assertEquals("first row\n", gunzip(file));
+      channel.write(ByteBuffer.wrap("second row\n".getBytes()));
+    } finally {
+      channel.close();
+    }
+    assertEquals("first row\nsecond row\n", gunzip(file));
+  }
+
+  @Test
+  public void drainEndsTheBlockOfACsvChannel() throws IOException {
+    File file = folder.newFile("flows.csv.gz");
+    CsvChannel channel =
+            new CsvChannel(new BlockCompressedChannel(file, BlockCompressedChannel.GZIP, 1 << 20));
+    try {
+      channel.writeLine("a,b");
+      channel.drain();
+      assertEquals("a,b" + System.lineSeparator(), gunzip(file));
+      // nothing written since the last drain, no empty member is added
+      long length = file.length();
+      channel.drain();
+      assertEquals(length, file.length());
+    } finally {
+      channel.close();
+    }
+  }
+
+  private static String gunzip(File file) throws IOException {
+    ByteArrayOutputStream content = new ByteArrayOutputStream();
+    try (InputStream input = new GZIPInputStream(new FileInputStream(file))) {
+      byte[] buffer = new byte[4096];
+      for (int count = input.read(buffer); count > 0; count = input.read(buffer)) {
+        content.write(buffer, 0, count);
+      }
+    }
+    return content.toString();
+  }
+}
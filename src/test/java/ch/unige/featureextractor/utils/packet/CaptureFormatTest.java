@@ -0,0 +1,85 @@
+/*
+ * Copyright (c)  Benedetto Marco Serinelli
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ch.unige.featureextractor.utils.packet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.PropertyResourceBundle;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CaptureFormatTest {
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void sniffsPcapInBothByteOrders() throws IOException {
+    assertEquals(CaptureFormat.PCAP, sniff(ByteOrder.BIG_ENDIAN, 0xA1B2C3D4, 0));
+    assertEquals(CaptureFormat.PCAP, sniff(ByteOrder.LITTLE_ENDIAN, 0xA1B2C3D4, 0));
+    assertEquals(CaptureFormat.PCAP_NANO, sniff(ByteOrder.BIG_ENDIAN, 0xA1B23C4D, 0));
+    assertEquals(CaptureFormat.PCAP_NANO, sniff(ByteOrder.LITTLE_ENDIAN, 0xA1B23C4D, 0));
+  }
+
+  @Test
+  public void sniffsPcapngInBothByteOrders() throws IOException {
+    int type = PcapngParser.SECTION_HEADER_BLOCK;
+    int magic = PcapngParser.BYTE_ORDER_MAGIC;
+    assertEquals(CaptureFormat.PCAPNG, sniff(ByteOrder.BIG_ENDIAN, type, magic));
+    assertEquals(CaptureFormat.PCAPNG, sniff(ByteOrder.LITTLE_ENDIAN, type, magic));
+  }
+
+  @Test
+  public void rejectsASectionHeaderWithoutByteOrderMagic() throws IOException {
+    assertNull(sniff(ByteOrder.BIG_ENDIAN, PcapngParser.SECTION_HEADER_BLOCK, 0x12345678));
+  }
+
+  @Test
+  public void rejectsOtherFiles() throws IOException {
+    assertNull(sniff(ByteOrder.BIG_ENDIAN, 0x504B0304, 0));
+    File empty = folder.newFile("empty.pcap");
+    assertNull(CaptureFormat.sniff(empty));
+  }
+
+  @Test
+  public void sniffsAGeneratedPcapng() throws IOException {
+    File pcapng = new File(folder.getRoot(), "generated.pcapng");
+    PropertyResourceBundle profile =
+            new PropertyResourceBundle(new StringReader("generator.flows=10\n"));
+    new TrafficGenerator(profile).write(pcapng);
+    assertEquals(CaptureFormat.PCAPNG, CaptureFormat.sniff(pcapng));
+  }
+
+  // A file starting with the magic, then the word at offset 8, in the given byte order
+  private String sniff(ByteOrder order, int magic, int word) throws IOException {
+    ByteBuffer head = ByteBuffer.allocate(24).order(order);
+    head.putInt(magic).putInt(28).putInt(word);
+    File file = folder.newFile();
+    try (FileOutputStream out = new FileOutputStream(file)) {
+      out.write(head.array());
+    }
+    return CaptureFormat.sniff(file);
+  }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c)  Benedetto Marco Serinelli
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ch.unige.featureextractor.utils.packet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.PropertyResourceBundle;
+import java.util.ResourceBundle;
+import org.jnetpcap.PcapClosedException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CheckpointTest {
+  private static final String EXTRACTOR = "unit";
+  private static final long FLOW_TIMEOUT = 120000000L;
+  private static final long ACTIVITY_TIMEOUT = 5000000L;
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void resumedPcapWritesTheSameCsv() throws IOException {
+    resumeWritesTheSameCsv("capture.pcap");
+  }
+
+  @Test
+  public void resumedPcapngWritesTheSameCsv() throws IOException {
+    resumeWritesTheSameCsv("capture.pcapng");
+  }
+
+  @Test
+  public void ignoresTheCheckpointOfAnotherMtime() throws IOException {
+    File pcap = generate("capture.pcap");
+    Checkpoint checkpoint = checkpointAfter(pcap, 100);
+    assertTrue(pcap.setLastModified(pcap.lastModified() + 10000));
+
+    assertNull(restore(checkpoint, pcap));
+  }
+
+  @Test
+  public void ignoresTheCheckpointOfAnotherSize() throws IOException {
+    File pcap = generate("capture.pcap");
+    Checkpoint checkpoint = checkpointAfter(pcap, 100);
+    long lastModified = pcap.lastModified();
+    try (FileOutputStream out = new FileOutputStream(pcap, true)) {
+      out.write(0);
+    }
+    // only the size differs from the checkpoint
+    assertTrue(pcap.setLastModified(lastModified));
+
+    assertNull(restore(checkpoint, pcap));
+  }
+
+  private void resumeWritesTheSameCsv(String name) throws IOException {
+    File pcap = generate(name);
+    File expected = folder.newFile("expected.csv");
+    List<ExtractorOutput> outputs = outputs(expected);
+    FlowWriter flowWriter = new FlowWriter(outputs);
+    FlowGenerator flowGen = flowGenerator(flowWriter);
+    MappedPacketReader reader = reader(pcap);
+    read(reader, flowGen, Integer.MAX_VALUE);
+    finish(reader, flowGen, flowWriter);
+
+    File checkpointDir = folder.newFolder("checkpoint");
+    outputs = outputs(folder.newFile("resumed.csv"));
+    flowWriter = new FlowWriter(outputs, false);
+    flowGen = flowGenerator(flowWriter);
+    reader = reader(pcap);
+    Checkpoint checkpoint = new Checkpoint(checkpointDir, pcap, 60000);
+    read(reader, flowGen, 1000);
+    checkpoint.save(reader, flowGen, flowWriter, outputs);
+    // the run stops after some more rows, they are written again by the resumed run
+    read(reader, flowGen, 1000);
+    reader.close();
+    flowWriter.close();
+
+    reader = reader(pcap);
+    flowGen = new FlowGenerator(true, FLOW_TIMEOUT, ACTIVITY_TIMEOUT);
+    outputs = checkpoint.restore(Collections.singletonList(EXTRACTOR), flowGen, reader);
+    assertNotNull(outputs);
+    flowWriter = new FlowWriter(outputs, true);
+    flowGen.addFlowListener(flowWriter);
+    read(reader, flowGen, Integer.MAX_VALUE);
+    finish(reader, flowGen, flowWriter);
+    checkpoint.delete();
+
+    assertArrayEquals(
+            Files.readAllBytes(expected.toPath()),
+            Files.readAllBytes(outputs.get(0).getFile().toPath()));
+  }
+
+  private File generate(String name) throws IOException {
+    PropertyResourceBundle profile =
+            new PropertyResourceBundle(
+                    new StringReader(
+                            "generator.seed=7\ngenerator.flows=200\n"
+                                    + "generator.flows.concurrent=20\n"));
+    File pcap = new File(folder.getRoot(), name);
+    new TrafficGenerator(profile).write(pcap);
+    return pcap;
+  }
+
+  private Checkpoint checkpointAfter(File pcap, int packets) throws IOException {
+    List<ExtractorOutput> outputs = outputs(folder.newFile("output.csv"));
+    FlowWriter flowWriter = new FlowWriter(outputs, false);
+    FlowGenerator flowGen = flowGenerator(flowWriter);
+    MappedPacketReader reader = reader(pcap);
+    Checkpoint checkpoint = new Checkpoint(folder.newFolder("checkpoint"), pcap, 60000);
+    read(reader, flowGen, packets);
+    checkpoint.save(reader, flowGen, flowWriter, outputs);
+    reader.close();
+    flowWriter.close();
+    return checkpoint;
+  }
+
+  private List<ExtractorOutput> restore(Checkpoint checkpoint, File pcap) throws IOException {
+    MappedPacketReader reader = reader(pcap);
+    try {
+      FlowGenerator flowGen = new FlowGenerator(true, FLOW_TIMEOUT, ACTIVITY_TIMEOUT);
+      return checkpoint.restore(Collections.singletonList(EXTRACTOR), flowGen, reader);
+    } finally {
+      reader.close();
+    }
+  }
+
+  private static List<ExtractorOutput> outputs(File file) {
+    ResourceBundle rb = ResourceBundle.getBundle(EXTRACTOR);
+    return Collections.singletonList(
+            new ExtractorOutput(EXTRACTOR, rb, PacketLoader.OUTPUT_FORMAT_CSV, null, file));
+  }
+
+  private static FlowGenerator flowGenerator(FlowWriter flowWriter) {
+    FlowGenerator flowGen = new FlowGenerator(true, FLOW_TIMEOUT, ACTIVITY_TIMEOUT);
+    flowGen.addFlowListener(flowWriter);
+    return flowGen;
+  }
+
+  private static MappedPacketReader reader(File pcap) throws IOException {
+    return new MappedPacketReader(pcap.getAbsolutePath(), true, false);
+  }
+
+  private static void read(MappedPacketReader reader, FlowGenerator flowGen, int packets) {
+    BasicPacketInfo packet = new BasicPacketInfo();
+    try {
+      for (int i = 0; i < packets; i++) {
+        if (reader.nextPacket(packet)) {
+          flowGen.addPacket(packet);
+        }
+      }
+    } catch (PcapClosedException e) {
+      // end of the capture
+    }
+  }
+
+  private static void finish(
+          MappedPacketReader reader, FlowGenerator flowGen, FlowWriter flowWriter) {
+    reader.close();
+    flowGen.finishCurrentFlows();
+    flowGen.close();
+    flowWriter.close();
+  }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c)  Benedetto Marco Serinelli
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ch.unige.featureextractor.utils.packet;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.util.PropertyResourceBundle;
+import org.jnetpcap.PcapClosedException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ContentDigestTest {
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void digestsAPcapAlongTheMappedReader() throws IOException {
+    File pcap = generate("capture.pcap");
+    ContentDigest digest = new ContentDigest(pcap);
+    MappedPacketReader reader = new MappedPacketReader(pcap.getPath(), true, false);
+    reader.setDigest(digest);
+    readAll(reader);
+
+    assertEquals(sha256(pcap), digest.finish());
+  }
+
+  @Test
+  public void digestsAPcapngAlongTheMappedReader() throws IOException {
+    File pcapng = generate("capture.pcapng");
+    ContentDigest digest = new ContentDigest(pcapng);
+    MappedPacketReader reader = new MappedPacketReader(pcapng.getPath(), true, false);
+    reader.setDigest(digest);
+    readAll(reader);
+
+    assertEquals(sha256(pcapng), digest.finish());
+  }
+
+  @Test
+  public void digestsAPcapAlongTheParallelReader() throws IOException {
+    File pcap = generate("capture.pcap");
+    ContentDigest digest = new ContentDigest(pcap);
+    ParallelMappedPacketReader reader =
+            new ParallelMappedPacketReader(pcap.getPath(), true, false, 3, 512 * 1024);
+    reader.setDigest(digest);
+    readAll(reader);
+
+    assertEquals(sha256(pcap), digest.finish());
+  }
+
+  @Test
+  public void digestsTheBytesTheReaderSkips() throws IOException {
+    File pcap = generate("capture.pcap");
+    MappedPacketReader first = new MappedPacketReader(pcap.getPath(), true, false);
+    BasicPacketInfo packet = new BasicPacketInfo();
+    for (int i = 0; i < 1000; i++) {
+      first.nextPacket(packet);
+    }
+    long position = first.getPosition();
+    first.close();
+    // bytes after the last record are not read by the reader
+    try (FileOutputStream out = new FileOutputStream(pcap, true)) {
+      out.write(new byte[] {1, 2, 3});
+    }
+
+    ContentDigest digest = new ContentDigest(pcap);
+    MappedPacketReader resumed = new MappedPacketReader(pcap.getPath(), true, false);
+    resumed.setDigest(digest);
+    resumed.seek(position, 0L, 0L);
+    readAll(resumed);
+
+    assertEquals(sha256(pcap), digest.finish());
+  }
+
+  private File generate(String name) throws IOException {
+    PropertyResourceBundle profile =
+            new PropertyResourceBundle(
+                    new StringReader("generator.flows=300\ngenerator.flows.concurrent=50\n"));
+    File capture = new File(folder.getRoot(), name);
+    new TrafficGenerator(profile).write(capture);
+    return capture;
+  }
+
+  private static void readAll(PacketSource reader) {
+    BasicPacketInfo packet = new BasicPacketInfo();
+    try {
+      while (true) {
+        reader.nextPacket(packet);
+      }
+    } catch (PcapClosedException e) {
+      // end of the capture
+    }
+  }
+
+  private static String sha256(File file) throws IOException {
+    return PcapIndex.toHex(PcapIndex.sha256().digest(Files.readAllBytes(file.toPath())));
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c)  Benedetto Marco Serinelli
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ch.unige.featureextractor.utils.packet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class FlowTableTest {
+  // the capacity of an empty table
+  private static final int CAPACITY = 1024;
+
+  @Test
+  public void removesCollidingKeysInEveryOrder() {
+    List<FlowKey> keys = keysAt(5, 4);
+    for (List<FlowKey> order : permutations(keys)) {
+      removeInOrder(keys, order);
+    }
+  }
+
+  @Test
+  public void removesFromARunWrappingPastTheFirstSlot() {
+    // the run takes the slots CAPACITY - 2 to 2, the keys of slot 0 start after the wrap
+    List<FlowKey> keys = new ArrayList<>(keysAt(CAPACITY - 2, 2));
+    keys.addAll(keysAt(CAPACITY - 1, 1));
+    keys.addAll(keysAt(0, 2));
+    for (List<FlowKey> order : permutations(keys)) {
+      removeInOrder(keys, order);
+    }
+  }
+
+  @Test
+  public void removesAnAbsentKey() {
+    FlowTable table = new FlowTable();
+    List<FlowKey> keys = keysAt(7, 2);
+    table.put(keys.get(0), flow(keys.get(0)));
+
+    assertNull(table.remove(keys.get(1)));
+    assertEquals(1, table.size());
+  }
+
+  private static void removeInOrder(List<FlowKey> keys, List<FlowKey> order) {
+    FlowTable table = new FlowTable();
+    List<BasicFlow> flows = new ArrayList<>();
+    for (FlowKey key : keys) {
+      BasicFlow flow = flow(key);
+      flows.add(flow);
+      table.put(key, flow);
+    }
+    List<FlowKey> removed = new ArrayList<>();
+    for (FlowKey key : order) {
+      assertSame(flows.get(keys.indexOf(key)), table.remove(key));
+      removed.add(key);
+      assertEquals(keys.size() - removed.size(), table.size());
+      // the keys left are still found once the run has been shifted back
+      for (int i = 0; i < keys.size(); i++) {
+        FlowKey other = keys.get(i);
+        if (removed.contains(other)) {
+          assertNull(table.get(other));
+        } else {
+          assertSame(flows.get(i), table.get(other));
+        }
+      }
+    }
+  }
+
+  // Keys whose home slot in an empty table is the given one
+  private static List<FlowKey> keysAt(int home, int count) {
+    List<FlowKey> keys = new ArrayList<>();
+    for (long port = 0; keys.size() < count; port++) {
+      FlowKey key = new FlowKey();
+      key.firstLow = 0x0A000001L;
+      key.secondLow = 0x0A000002L;
+      key.ports = (6L << 32) | (4L << 40) | port;
+      if ((key.hash() & (CAPACITY - 1)) == home) {
+        keys.add(key);
+      }
+    }
+    return keys;
+  }
+
+  private static BasicFlow flow(FlowKey key) {
+    BasicFlow flow = new BasicFlow(true, new BasicPacketInfo());
+    flow.tableKey = key;
+    return flow;
+  }
+
+  private static <T> List<List<T>> permutations(List<T> items) {
+    List<List<T>> permutations = new ArrayList<>();
+    if (items.isEmpty()) {
+      permutations.add(new ArrayList<>());
+      return permutations;
+    }
+    for (int i = 0; i < items.size(); i++) {
+      List<T> rest = new ArrayList<>(items);
+      T first = rest.remove(i);
+      for (List<T> permutation : permutations(rest)) {
+        permutation.add(0, first);
+        permutations.add(permutation);
+      }
+    }
+    return permutations;
+  }
+}
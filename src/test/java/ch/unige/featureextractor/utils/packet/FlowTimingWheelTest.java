@@ -0,0 +1,97 @@
+/*
+ * Copyright (c)  Benedetto Marco Serinelli
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ch.unige.featureextractor.utils.packet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class FlowTimingWheelTest {
+  private static final long TIMEOUT = 1000L;
+  private static final long TICK = 100L;
+
+  @Test
+  public void expiresAFlowOnlyAfterItsTimeout() {
+    FlowTimingWheel wheel = new FlowTimingWheel(TIMEOUT, TICK);
+    List<BasicFlow> expired = new ArrayList<>();
+    long start = 5000L;
+    wheel.advance(start, expired::add);
+    BasicFlow flow = flow();
+    wheel.schedule(flow, start + TIMEOUT);
+
+    wheel.advance(start + TIMEOUT, expired::add);
+    assertTrue(expired.isEmpty());
+    // a flow is handed out at most one tick late
+    wheel.advance(start + TIMEOUT + TICK, expired::add);
+    assertEquals(1, expired.size());
+    assertEquals(flow, expired.get(0));
+    assertEquals(0, wheel.size());
+  }
+
+  @Test
+  public void expiresAFlowScheduledInThePast() {
+    FlowTimingWheel wheel = new FlowTimingWheel(TIMEOUT, TICK);
+    List<BasicFlow> expired = new ArrayList<>();
+    long now = 50000L;
+    wheel.advance(now, expired::add);
+    // its slot is the current one, not the one of a round already gone
+    BasicFlow flow = flow();
+    wheel.schedule(flow, now - 3 * TIMEOUT);
+
+    wheel.advance(now + TICK, expired::add);
+    assertEquals(1, expired.size());
+    assertEquals(flow, expired.get(0));
+  }
+
+  @Test
+  public void expiresEveryFlowOnceOnAJumpLongerThanTheWheel() {
+    FlowTimingWheel wheel = new FlowTimingWheel(TIMEOUT, TICK);
+    List<BasicFlow> expired = new ArrayList<>();
+    long start = 0L;
+    wheel.advance(start, expired::add);
+    List<BasicFlow> flows = new ArrayList<>();
+    for (long expiry = start; expiry <= start + TIMEOUT; expiry += TICK / 2) {
+      BasicFlow flow = flow();
+      flows.add(flow);
+      wheel.schedule(flow, expiry);
+    }
+
+    // far more than the TIMEOUT / TICK + 2 slots of the wheel
+    long jump = start + 50 * TIMEOUT;
+    wheel.advance(jump, expired::add);
+    assertEquals(flows.size(), expired.size());
+    assertTrue(expired.containsAll(flows));
+    assertEquals(0, wheel.size());
+
+    // the wheel goes on from the time after the jump
+    BasicFlow flow = flow();
+    wheel.schedule(flow, jump + TIMEOUT);
+    wheel.advance(jump + TIMEOUT / 2, expired::add);
+    assertEquals(flows.size(), expired.size());
+    wheel.advance(jump + TIMEOUT + TICK, expired::add);
+    assertEquals(flows.size() + 1, expired.size());
+  }
+
+  private static BasicFlow flow() {
+    return new BasicFlow(true, new BasicPacketInfo());
+  }
+}
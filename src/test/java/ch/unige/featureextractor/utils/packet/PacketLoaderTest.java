@@ -0,0 +1,70 @@
+/*
+ * Copyright (c)  Benedetto Marco Serinelli
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ch.unige.featureextractor.utils.packet;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.PropertyResourceBundle;
+import java.util.ResourceBundle;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PacketLoaderTest {
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void readsPcapngWithTheMappedEngineUnderJnetpcap() throws IOException {
+    File pcapng = new File(folder.getRoot(), "capture.pcapng");
+    new TrafficGenerator(new PropertyResourceBundle(new StringReader("generator.flows=10\n")))
+            .write(pcapng);
+    assertMapped(pcapng);
+  }
+
+  @Test
+  public void readsNanosecondPcapWithTheMappedEngineUnderJnetpcap() throws IOException {
+    File pcap = new File(folder.getRoot(), "capture.pcap");
+    try (DataOutputStream out = new DataOutputStream(new FileOutputStream(pcap))) {
+      out.writeInt(0xA1B23C4D);
+      out.writeShort(2);
+      out.writeShort(4);
+      out.writeInt(0);
+      out.writeInt(0);
+      out.writeInt(65535);
+      out.writeInt(1);
+    }
+    assertMapped(pcap);
+  }
+
+  private static void assertMapped(File capture) throws IOException {
+    ResourceBundle rb =
+            new PropertyResourceBundle(new StringReader("pcap.reader.engine=jnetpcap\n"));
+    PacketSource source = PacketLoader.openPacketSource(capture.getPath(), true, false, rb, null);
+    try {
+      assertTrue(source instanceof MappedPacketReader);
+    } finally {
+      source.close();
+    }
+  }
+}
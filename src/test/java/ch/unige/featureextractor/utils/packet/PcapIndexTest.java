@@ -0,0 +1,78 @@
+/*
+ * Copyright (c)  Benedetto Marco Serinelli
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ch.unige.featureextractor.utils.packet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PcapIndexTest {
+  private static final String CONFIG = "config";
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void sameSamplesDifferentContentIsNotADuplicate() throws IOException {
+    // 4 MB: the 16 sampled blocks of 64 KB leave gaps, a byte in one of them is not sampled
+    byte[] content = new byte[4 * 1024 * 1024];
+    for (int i = 0; i < content.length; i++) {
+      content[i] = (byte) (i * 31);
+    }
+    File first = writeFile("first.pcap", content);
+    content[100 * 1024] ^= 1;
+    File second = writeFile("second.pcap", content);
+
+    String fingerprint = PcapIndex.fingerprint(first);
+    assertEquals(fingerprint, PcapIndex.fingerprint(second));
+    assertNotEquals(PcapIndex.contentHash(first), PcapIndex.contentHash(second));
+
+    File indexFile = new File(folder.getRoot(), "index.tsv");
+    File output = folder.newFile("first.csv");
+    new PcapIndex(indexFile).add(fingerprint, CONFIG, PcapIndex.contentHash(first), output);
+
+    // reloaded from the file, as after a restart
+    PcapIndex index = new PcapIndex(indexFile);
+    assertTrue(index.mayContain(fingerprint, CONFIG));
+    assertEquals(output, index.lookup(fingerprint, CONFIG, PcapIndex.contentHash(first)));
+    assertNull(index.lookup(fingerprint, CONFIG, PcapIndex.contentHash(second)));
+  }
+
+  @Test
+  public void entriesWithoutContentHashAreIgnored() throws IOException {
+    File output = folder.newFile("old.csv");
+    File indexFile = folder.newFile("index.tsv");
+    Files.write(indexFile.toPath(), ("fp\t" + CONFIG + "\t" + output + "\n").getBytes());
+    PcapIndex index = new PcapIndex(indexFile);
+    assertFalse(index.mayContain("fp", CONFIG));
+  }
+
+  private File writeFile(String name, byte[] content) throws IOException {
+    File file = new File(folder.getRoot(), name);
+    Files.write(file.toPath(), content);
+    return file;
+  }
+}
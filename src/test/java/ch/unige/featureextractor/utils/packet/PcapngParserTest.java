@@ -0,0 +1,163 @@
+/*
+ * Copyright (c)  Benedetto Marco Serinelli
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ch.unige.featureextractor.utils.packet;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import org.junit.Test;
+
+public class PcapngParserTest {
+  private static final int LINKTYPE_ETHERNET = 1;
+  private static final int OPTION_TS_RESOLUTION = 9;
+  private static final int OPTION_TS_OFFSET = 14;
+  private static final ByteOrder[] ORDERS = {ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN};
+
+  @Test
+  public void readsMicrosecondTimestampsByDefault() throws IOException {
+    for (ByteOrder order : ORDERS) {
+      Blocks blocks = new Blocks(order).section().iface(-1, 0L).packet(0, 1500000L, 60);
+      assertEquals(1500000L, blocks.parseTimestamp());
+    }
+  }
+
+  @Test
+  public void readsDecimalResolutionAndOffset() throws IOException {
+    for (ByteOrder order : ORDERS) {
+      // nanoseconds, 100 seconds after the timestamps
+      Blocks blocks = new Blocks(order).section().iface(9, 100L).packet(0, 2000123456L, 60);
+      assertEquals(102000123L, blocks.parseTimestamp());
+    }
+  }
+
+  @Test
+  public void readsBinaryResolution() throws IOException {
+    for (ByteOrder order : ORDERS) {
+      // units of 2^-10 seconds
+      Blocks blocks = new Blocks(order).section().iface(0x80 | 10, 0L).packet(0, 3584L, 60);
+      assertEquals(3500000L, blocks.parseTimestamp());
+    }
+  }
+
+  @Test
+  public void readsTheInterfaceOfEachPacket() throws IOException {
+    for (ByteOrder order : ORDERS) {
+      Blocks blocks =
+              new Blocks(order).section().iface(-1, 0L).iface(3, 0L).packet(1, 2500L, 60);
+      assertEquals(2500000L, blocks.parseTimestamp());
+      assertEquals(60, blocks.parser.packetLength);
+      assertEquals(LINKTYPE_ETHERNET, blocks.parser.packetLinkType);
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void rejectsABlockShorterThanItsHeader() throws IOException {
+    Blocks blocks = new Blocks(ByteOrder.LITTLE_ENDIAN).section();
+    blocks.buf.putInt(4, 8);
+    blocks.parseTimestamp();
+  }
+
+  @Test(expected = IOException.class)
+  public void rejectsABlockLengthNotMultipleOfFour() throws IOException {
+    Blocks blocks = new Blocks(ByteOrder.BIG_ENDIAN).section();
+    blocks.buf.putInt(4, 30);
+    blocks.parseTimestamp();
+  }
+
+  @Test(expected = IOException.class)
+  public void rejectsAnInvalidByteOrderMagic() throws IOException {
+    Blocks blocks = new Blocks(ByteOrder.BIG_ENDIAN).section();
+    blocks.buf.putInt(8, 0x12345678);
+    blocks.parseTimestamp();
+  }
+
+  // Blocks of a pcapng section written in the given byte order
+  private static final class Blocks {
+    private final ByteBuffer buf;
+    private final PcapngParser parser = new PcapngParser();
+    private int start;
+
+    private Blocks(ByteOrder order) {
+      buf = ByteBuffer.allocate(1024).order(order);
+    }
+
+    private Blocks section() {
+      begin(PcapngParser.SECTION_HEADER_BLOCK);
+      buf.putInt(PcapngParser.BYTE_ORDER_MAGIC);
+      buf.putShort((short) 1).putShort((short) 0);
+      buf.putLong(-1L);
+      return end();
+    }
+
+    // resolution -1 leaves out the option, microseconds
+    private Blocks iface(int resolution, long offsetSeconds) {
+      begin(1);
+      buf.putShort((short) LINKTYPE_ETHERNET).putShort((short) 0);
+      buf.putInt(65535);
+      if (resolution >= 0) {
+        buf.putShort((short) OPTION_TS_RESOLUTION).putShort((short) 1);
+        buf.put((byte) resolution).put(new byte[3]);
+      }
+      if (offsetSeconds != 0L) {
+        buf.putShort((short) OPTION_TS_OFFSET).putShort((short) 8);
+        buf.putLong(offsetSeconds);
+      }
+      buf.putInt(0);
+      return end();
+    }
+
+    private Blocks packet(int interfaceId, long units, int length) {
+      begin(6);
+      buf.putInt(interfaceId);
+      buf.putInt((int) (units >>> 32)).putInt((int) units);
+      buf.putInt(length).putInt(length);
+      buf.put(new byte[(length + 3) & ~3]);
+      return end();
+    }
+
+    private void begin(int type) {
+      start = buf.position();
+      buf.putInt(type).putInt(0);
+    }
+
+    private Blocks end() {
+      int length = buf.position() + 4 - start;
+      buf.putInt(length);
+      buf.putInt(start + 4, length);
+      return this;
+    }
+
+    // Parses the blocks as the readers do, on a big-endian buffer, up to the first packet
+    private long parseTimestamp() throws IOException {
+      ByteBuffer view = ByteBuffer.wrap(buf.array(), 0, buf.position());
+      int index = 0;
+      while (index < view.limit()) {
+        int type = parser.blockType(view, index);
+        int length = parser.blockLength(view, index);
+        if (parser.readBlock(view, index, type, length)) {
+          return parser.packetTimestamp;
+        }
+        index += length;
+      }
+      throw new IOException("No packet");
+    }
+  }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c)  Benedetto Marco Serinelli
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ch.unige.featureextractor.utils.packet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.util.PropertyResourceBundle;
+import org.junit.Test;
+
+public class TrafficGeneratorTest {
+  private static final int UDP_PAYLOAD = 14 + 20 + 8;
+  private static final byte UDP = 17;
+
+  @Test
+  public void leavesTheUdpPayloadToZeroAfterTcpFrames() throws IOException {
+    PropertyResourceBundle profile =
+            new PropertyResourceBundle(
+                    new StringReader("generator.flows=50\ngenerator.tcp.ratio=0.5\n"));
+    TrafficGenerator generator = new TrafficGenerator(profile);
+    int udpFrames = 0;
+    while (generator.next()) {
+      ByteBuffer frame = generator.getFrame();
+      if (frame.get(14 + 9) == UDP) {
+        udpFrames++;
+        for (int i = UDP_PAYLOAD; i < generator.getCapturedLength(); i++) {
+          assertEquals("byte " + i + " of a UDP frame", 0, frame.get(i));
+        }
+      }
+    }
+    assertTrue(udpFrames > 0);
+  }
+}